@@ -0,0 +1,91 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import taskbench.TaskFixture;
+
+/**
+ Implementation of TaskFixture living in the default package next to task tracker classes
+ */
+@SuppressWarnings("unchecked")
+public class TaskBenchFixture implements TaskFixture {
+    private static final String[] WORDS = {"buy", "groceries", "call", "mom", "fix", "bug", "write", "report",
+            "walk", "dog", "pay", "bills", "read", "book", "clean", "kitchen", "plan", "trip", "email", "team"};
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 9, 0);
+
+    @Override
+    public List<?> generate(int count) {
+        List<JSONObject> JSONObjects = new ArrayList<JSONObject>(count);
+        TaskStatus[] statuses = TaskStatus.values();
+        StringBuilder description = new StringBuilder();
+        for(int id = 0; id < count; id++){
+            description.setLength(0);
+            int words = 2 + id % 5;
+            for(int w = 0; w < words; w++){
+                if(w != 0){
+                    description.append(' ');
+                }
+                description.append(WORDS[(id * 7 + w * 13) % WORDS.length]);
+            }
+            description.append(" #").append(id);
+            LocalDateTime createdAt = START.plusMinutes(id * 3L).plusNanos((id % 1000) * 1_000_000L);
+            LocalDateTime updatedAt = createdAt.plusHours(id % 48);
+            JSONObjects.add(new JSONObject(id, description.toString(), statuses[id % statuses.length], createdAt, updatedAt));
+        }
+        return JSONObjects;
+    }
+
+    @Override
+    public void saveAll(String storage, List<?> tasks) throws IOException {
+        TaskTracker.openStore(storage).saveAll((List<JSONObject>) tasks);
+    }
+
+    @Override
+    public List<?> load(String storage) throws Exception {
+        return TaskTracker.openStore(storage).load();
+    }
+
+    @Override
+    public String toJSON(List<?> tasks) throws IOException {
+        StringWriter writer = new StringWriter();
+        serialize(tasks, writer);
+        return writer.toString();
+    }
+
+    @Override
+    public List<?> parse(String json) throws Exception {
+        return new JSONParser(json).parse();
+    }
+
+    @Override
+    public void serialize(List<?> tasks, Writer writer) throws IOException {
+        new JSONWriter(writer).writeJSON((List<JSONObject>) tasks);
+        writer.flush();
+    }
+
+    @Override
+    public int indexOf(List<?> tasks, int id) {
+        return TaskJournal.insertionIndex(id, (List<JSONObject>) tasks);
+    }
+
+    @Override
+    public void list(List<?> tasks, String status, PrintStream out) throws Exception {
+        List<JSONObject> JSONObjects = (List<JSONObject>) tasks;
+        TaskIndexes indexes = new TaskIndexes();
+        if(JSONObjects instanceof MappedTaskList){
+            indexes.setTable(TaskTable.build(JSONObjects));
+        }
+        String[] args = status == null ? new String[]{"list"} : new String[]{"list", status};
+        TaskTracker.runCommand(args, JSONObjects, indexes, TaskChangeListener.NONE, out);
+    }
+
+    @Override
+    public void main(String storage, String[] args) {
+        System.setProperty("tasks.storage", storage);
+        TaskTracker.main(args);
+    }
+}
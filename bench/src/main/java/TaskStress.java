@@ -0,0 +1,145 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ Multi-process stress test of concurrent access (see TaskLock).
+ Starts writer processes that add tasks at the same time and reader processes that list them
+ in a fresh temporary directory, then checks every added task was saved exactly once
+ and prints throughput. Every command goes through TaskTracker.main like it does from the shell.
+ Usage: TaskStress [writers] [adds per writer] [readers], exits with 1 if any update was lost.
+ storage is taken from tasks.storage property or TASKS_STORAGE like for TaskTracker,
+ gradle :bench:stress runs it for every storage
+ */
+public class TaskStress {
+    private static final String SEED_DESCRIPTION = "seed task";
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if(args.length > 0 && args[0].equals("worker")){
+            runWorker(args);
+            return;
+        }
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int addsPerWriter = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int readers = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        Path directory = Files.createTempDirectory("task-stress");
+        System.out.printf("Running %d writers x %d adds and %d readers in %s\n", writers, addsPerWriter, readers, directory);
+
+        // list fails on empty task list, so readers get one task to read from the start
+        if(startWorker(directory, "seed", "0", "1").waitFor() != 0){
+            System.exit(1);
+        }
+        List<Process> processes = new ArrayList<Process>();
+        long start = System.nanoTime();
+        for(int w = 0; w < writers; w++){
+            processes.add(startWorker(directory, "add", Integer.toString(w), Integer.toString(addsPerWriter)));
+        }
+        for(int r = 0; r < readers; r++){
+            processes.add(startWorker(directory, "list", Integer.toString(r), Integer.toString(addsPerWriter)));
+        }
+        int failedProcesses = 0;
+        for(Process process: processes){
+            if(process.waitFor() != 0){
+                failedProcesses++;
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        int exitCode = startWorker(directory, "verify", Integer.toString(writers), Integer.toString(addsPerWriter)).waitFor();
+        double seconds = elapsedNanos / 1e9;
+        int commands = (writers + readers) * addsPerWriter;
+        System.out.printf("%d commands in %.2f s: %.1f commands/s, %.1f adds/s\n",
+                commands, seconds, commands / seconds, writers * addsPerWriter / seconds);
+        if(failedProcesses != 0 || exitCode != 0){
+            System.out.printf("FAILED: %d worker processes failed, verification exit code %d\n", failedProcesses, exitCode);
+            System.exit(1);
+        }
+        System.out.println("OK: no update was lost");
+    }
+
+    private static Process startWorker(Path directory, String role, String number, String count) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<String> command = new ArrayList<String>(List.of(java, "-cp", System.getProperty("java.class.path")));
+        if(TaskTracker.storageName() != null){
+            command.add("-Dtasks.storage=" + TaskTracker.storageName());
+        }
+        command.addAll(List.of(TaskStress.class.getName(), "worker", role, number, count));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(directory.toFile());
+        builder.redirectOutput(role.equals("verify") ? ProcessBuilder.Redirect.INHERIT : ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return builder.start();
+    }
+
+    /**
+     Runs in the worker process, current directory is the stress test directory
+     */
+    private static void runWorker(String[] args){
+        String role = args[1];
+        int number = Integer.parseInt(args[2]);
+        int count = Integer.parseInt(args[3]);
+        switch(role){
+            case "seed":
+                TaskTracker.main(new String[]{"add", SEED_DESCRIPTION});
+                break;
+            case "add":
+                for(int i = 0; i < count; i++){
+                    TaskTracker.main(new String[]{"add", taskDescription(number, i)});
+                }
+                break;
+            case "list":
+                // a reader fails the run if it sees half-written storage, main exits with 1 then
+                for(int i = 0; i < count; i++){
+                    TaskTracker.main(new String[]{"list"});
+                }
+                break;
+            case "verify":
+                System.exit(verify(number, count));
+                break;
+            default:
+                System.err.println("Unknown worker role " + role);
+                System.exit(1);
+        }
+    }
+
+    /**
+     @return 0 if every task added by writers is stored exactly once under a unique id
+     */
+    private static int verify(int writers, int addsPerWriter){
+        TaskStore store = TaskTracker.openStore(TaskTracker.storageName());
+        List<JSONObject> JSONObjects = store == null ? null : TaskTracker.loadFromStore(store);
+        if(JSONObjects == null){
+            return 1;
+        }
+        Set<String> descriptions = new HashSet<String>();
+        Set<Integer> ids = new HashSet<Integer>();
+        int duplicates = 0;
+        int expected = writers * addsPerWriter + 1;
+        for(JSONObject task: JSONObjects){
+            if(!descriptions.add(task.getDescription()) || !ids.add(task.getId())){
+                duplicates++;
+            }
+        }
+        int lost = 0;
+        for(int w = 0; w < writers; w++){
+            for(int i = 0; i < addsPerWriter; i++){
+                if(!descriptions.contains(taskDescription(w, i))){
+                    lost++;
+                }
+            }
+        }
+        System.out.printf("Stored %d of %d tasks, %d lost, %d duplicated (%s)\n",
+                JSONObjects.size(), expected, lost, duplicates, new File(".").getAbsoluteFile().getParent());
+        return lost == 0 && duplicates == 0 && JSONObjects.size() == expected && descriptions.contains(SEED_DESCRIPTION) ? 0 : 1;
+    }
+
+    private static String taskDescription(int writer, int index){
+        return "writer " + writer + " task " + index;
+    }
+}
@@ -0,0 +1,511 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ End-to-end workload of TaskTracker.main under the command mix seen in production: 60% list (without status
+ or with one of the statuses), 25% mark-done/mark-in-progress, 10% add and 5% delete.
+ For every combination of store size, storage, mode and number of clients it generates synthetic store and
+ one command trace per client from the seed, replays the traces and appends CSV rows with throughput,
+ p50/p95/p99/max latency and bytes written per command, one row for every command kind and one for all of them,
+ so runs of different releases (--label) can be charted together.
+ mark-* and delete of a client touch only ids where id % clients == client, so concurrent traces never
+ change the same task and every command succeeds in whatever order clients run. Traces are written in batch
+ line format (trace-N.txt in the run directory, kept with --keep) and can be replayed with batch as well.
+ Modes:
+ inprocess - one JVM per client replays its trace through TaskTracker.execute, like a warm process would
+ subprocess - every command starts new JVM the way shell calls it, JVM start is part of the latency
+ Bytes written come from --stats line of every command (/proc/self/io, Linux only, -1 elsewhere),
+ pages of memory-mapped files aren't counted. In subprocess mode output written to standard output
+ is counted as well, in-process replay discards it without writing.
+ Usage: TaskWorkload [--sizes 1000,10000,100000] [--storages json] [--modes inprocess,subprocess]
+ [--clients 1,4] [--commands 100] [--seed 1] [--label current] [--out workload.csv] [--keep]
+ */
+public class TaskWorkload {
+    private static final String CSV_HEADER = "label,date,storage,size,mode,clients,seed,command,count,errors,"
+            + "throughputPerSecond,p50Ms,p95Ms,p99Ms,maxMs,bytesWrittenPerCommand";
+    private static final String[] WORDS = {"buy", "groceries", "call", "mom", "fix", "bug", "write", "report",
+            "walk", "dog", "pay", "bills", "read", "book", "clean", "kitchen", "plan", "trip", "email", "team"};
+    private static final String[] LIST_STATUSES = {null, "todo", "in-progress", "done"};
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 9, 0);
+    private static final Pattern BYTES_WRITTEN = Pattern.compile("\"bytesWritten\":(-?\\d+)");
+    private static final String READY = "ready";
+
+    private List<Integer> m_sizes = List.of(1000, 10000, 100000);
+    private List<String> m_storages = List.of("json");
+    private List<String> m_modes = List.of("inprocess", "subprocess");
+    private List<Integer> m_clients = List.of(1, 4);
+    private int m_commands = 100;
+    private long m_seed = 1;
+    private String m_label = "current";
+    private Path m_out = Path.of("workload.csv");
+    private boolean m_keep;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if(args.length > 0 && args[0].equals("worker")){
+            System.exit(runWorker(args));
+        }
+        TaskWorkload workload = new TaskWorkload();
+        for(int i = 0; i < args.length; i++){
+            String arg = args[i];
+            if(arg.equals("--keep")){
+                workload.m_keep = true;
+                continue;
+            }
+            if(i + 1 == args.length){
+                System.err.println("Option " + arg + " needs a value");
+                System.exit(1);
+            }
+            String value = args[++i];
+            switch(arg){
+                case "--sizes" -> workload.m_sizes = Arrays.stream(value.split(",")).map(Integer::valueOf).toList();
+                case "--storages" -> workload.m_storages = List.of(value.split(","));
+                case "--modes" -> workload.m_modes = List.of(value.split(","));
+                case "--clients" -> workload.m_clients = Arrays.stream(value.split(",")).map(Integer::valueOf).toList();
+                case "--commands" -> workload.m_commands = Integer.parseInt(value);
+                case "--seed" -> workload.m_seed = Long.parseLong(value);
+                case "--label" -> workload.m_label = value;
+                case "--out" -> workload.m_out = Path.of(value);
+                default -> {
+                    System.err.println("Unknown option " + arg);
+                    System.exit(1);
+                }
+            }
+        }
+        for(String mode: workload.m_modes){
+            if(!mode.equals("inprocess") && !mode.equals("subprocess")){
+                System.err.println("Unknown mode " + mode + ", use inprocess or subprocess");
+                System.exit(1);
+            }
+        }
+        workload.runAll();
+    }
+
+    private void runAll() throws IOException, InterruptedException {
+        boolean header = !Files.exists(m_out) || Files.size(m_out) == 0;
+        try(Writer csv = Files.newBufferedWriter(m_out, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)){
+            if(header){
+                csv.write(CSV_HEADER + "\n");
+            }
+            for(String storage: m_storages){
+                for(int size: m_sizes){
+                    for(String mode: m_modes){
+                        for(int clients: m_clients){
+                            for(String row: runOne(storage, size, mode, clients)){
+                                csv.write(row + "\n");
+                            }
+                            csv.flush();
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println("Results appended to " + m_out.toAbsolutePath());
+    }
+
+    /**
+     Generates store and traces in a new temporary directory and replays them
+     @return CSV rows of the run
+     */
+    private List<String> runOne(String storage, int size, String mode, int clients) throws IOException, InterruptedException {
+        Path directory = Files.createTempDirectory("task-workload");
+        System.out.printf("%s: %d tasks, %s, %d clients x %d commands in %s\n", storage, size, mode, clients, m_commands, directory);
+        if(startWorker(directory, storage, "generate", Integer.toString(size), Long.toString(m_seed)).waitFor() != 0){
+            throw new IOException("Store of " + size + " tasks couldn't be generated in " + directory);
+        }
+        List<List<String[]>> traces = new ArrayList<List<String[]>>(clients);
+        for(int client = 0; client < clients; client++){
+            List<String[]> trace = generateTrace(size, clients, client);
+            writeTrace(directory.resolve("trace-" + client + ".txt"), trace);
+            traces.add(trace);
+        }
+
+        long[][] latencies = new long[clients][];
+        int[][] exitCodes = new int[clients][];
+        long wallNanos = mode.equals("inprocess")
+                ? replayInProcess(directory, storage, clients, latencies, exitCodes)
+                : replaySubprocesses(directory, storage, traces, latencies, exitCodes);
+
+        // one sample per command of every client: latency, exit code, bytes written, grouped by command kind
+        Map<String, List<long[]>> samples = new LinkedHashMap<String, List<long[]>>();
+        samples.put("all", new ArrayList<long[]>());
+        for(int client = 0; client < clients; client++){
+            long[] written = readBytesWritten(directory.resolve("stats-" + client + ".ndjson"), traces.get(client).size());
+            for(int i = 0; i < traces.get(client).size(); i++){
+                long[] sample = {latencies[client][i], exitCodes[client][i], written[i]};
+                samples.get("all").add(sample);
+                samples.computeIfAbsent(kind(traces.get(client).get(i)[0]), key -> new ArrayList<long[]>()).add(sample);
+            }
+        }
+        List<String> rows = new ArrayList<String>();
+        String date = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS).toString();
+        for(Map.Entry<String, List<long[]>> entry: samples.entrySet()){
+            String row = String.join(",", m_label, date, storage, Integer.toString(size), mode, Integer.toString(clients),
+                    Long.toString(m_seed), entry.getKey(), summarize(entry.getValue(), wallNanos));
+            rows.add(row);
+            System.out.println("  " + row);
+        }
+        if(!m_keep){
+            deleteRecursively(directory);
+        }
+        return rows;
+    }
+
+    /**
+     @return count, errors, throughput, latency percentiles and bytes written per command separated by commas
+     */
+    private static String summarize(List<long[]> samples, long wallNanos){
+        long[] latencies = new long[samples.size()];
+        int errors = 0;
+        long written = 0;
+        boolean writtenKnown = true;
+        for(int i = 0; i < samples.size(); i++){
+            long[] sample = samples.get(i);
+            latencies[i] = sample[0];
+            if(sample[1] != 0){
+                errors++;
+            }
+            if(sample[2] < 0){
+                writtenKnown = false;
+            }
+            written += sample[2];
+        }
+        Arrays.sort(latencies);
+        return String.format(Locale.ROOT, "%d,%d,%.2f,%.3f,%.3f,%.3f,%.3f,%s", latencies.length, errors,
+                latencies.length / (wallNanos / 1e9), percentile(latencies, 50), percentile(latencies, 95),
+                percentile(latencies, 99), latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6,
+                writtenKnown && latencies.length != 0 ? Long.toString(written / latencies.length) : "-1");
+    }
+
+    /**
+     @param sorted latencies in nanoseconds sorted in increasing order
+     @return nearest-rank percentile in milliseconds
+     */
+    private static double percentile(long[] sorted, int percent){
+        if(sorted.length == 0){
+            return 0;
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    private static String kind(String command){
+        return command.startsWith("mark-") ? "mark" : command;
+    }
+
+    /**
+     Makes reproducible trace of one client: the same seed, store size and client give the same commands
+     */
+    private List<String[]> generateTrace(int size, int clients, int client){
+        Random random = new Random(m_seed * 1_000_003 + client);
+        // ids of the initial store this client may change and their statuses, deleted ones are swapped out
+        int[] owned = new int[Math.max(0, (size - client + clients - 1) / clients)];
+        TaskStatus[] statuses = new TaskStatus[owned.length];
+        int ownedCount = 0;
+        for(int id = client; id < size; id += clients){
+            statuses[ownedCount] = initialStatus(m_seed, id);
+            owned[ownedCount++] = id;
+        }
+        List<String[]> trace = new ArrayList<String[]>(m_commands);
+        for(int i = 0; i < m_commands; i++){
+            int roll = random.nextInt(100);
+            boolean changesOwned = roll >= 60 && roll < 85 || roll >= 95;
+            if(roll < 60 || changesOwned && ownedCount == 0){
+                String status = LIST_STATUSES[random.nextInt(LIST_STATUSES.length)];
+                trace.add(status == null ? new String[]{"list"} : new String[]{"list", status});
+            } else if(roll < 85){
+                // marking task with the status it already has fails, so the status always changes
+                int position = random.nextInt(ownedCount);
+                TaskStatus status = statuses[position];
+                boolean done = status == TaskStatus.in_progress || status == TaskStatus.todo && random.nextBoolean();
+                statuses[position] = done ? TaskStatus.done : TaskStatus.in_progress;
+                trace.add(new String[]{done ? "mark-done" : "mark-in-progress", Integer.toString(owned[position])});
+            } else if(roll < 95){
+                trace.add(new String[]{"add", description(random, client * 1_000_000 + i)});
+            } else {
+                int position = random.nextInt(ownedCount);
+                trace.add(new String[]{"delete", Integer.toString(owned[position])});
+                ownedCount--;
+                owned[position] = owned[ownedCount];
+                statuses[position] = statuses[ownedCount];
+            }
+        }
+        return trace;
+    }
+
+    private static String description(Random random, int number){
+        StringBuilder description = new StringBuilder();
+        int words = 2 + random.nextInt(5);
+        for(int w = 0; w < words; w++){
+            description.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return description.append('#').append(number).toString();
+    }
+
+    /**
+     Writes trace in batch line format, arguments with spaces go in double quotes
+     */
+    private static void writeTrace(Path path, List<String[]> trace) throws IOException {
+        try(Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)){
+            for(String[] command: trace){
+                for(int i = 0; i < command.length; i++){
+                    if(i != 0){
+                        writer.write(' ');
+                    }
+                    writer.write(command[i].contains(" ") ? "\"" + command[i] + "\"" : command[i]);
+                }
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     Starts one worker JVM per client, lets them replay together once all of them read their traces
+     @return wall time from start signal until the last worker finished
+     */
+    private long replayInProcess(Path directory, String storage, int clients, long[][] latencies, int[][] exitCodes)
+            throws IOException, InterruptedException {
+        List<Process> workers = new ArrayList<Process>(clients);
+        List<BufferedReader> outputs = new ArrayList<BufferedReader>(clients);
+        for(int client = 0; client < clients; client++){
+            Process worker = startWorker(directory, storage, "replay", Integer.toString(client), "");
+            workers.add(worker);
+            BufferedReader output = new BufferedReader(new InputStreamReader(worker.getInputStream(), StandardCharsets.UTF_8));
+            outputs.add(output);
+            if(!READY.equals(output.readLine())){
+                throw new IOException("Worker " + client + " didn't start");
+            }
+        }
+        long start = System.nanoTime();
+        for(Process worker: workers){
+            OutputStream input = worker.getOutputStream();
+            input.write('\n');
+            input.flush();
+        }
+        for(int client = 0; client < clients; client++){
+            // worker prints "latency exitCode" lines only after its last command, so pipes don't slow it down
+            List<String> lines = new ArrayList<String>();
+            String line;
+            while((line = outputs.get(client).readLine()) != null){
+                lines.add(line);
+            }
+            latencies[client] = new long[lines.size()];
+            exitCodes[client] = new int[lines.size()];
+            for(int i = 0; i < lines.size(); i++){
+                String[] values = lines.get(i).split(" ");
+                latencies[client][i] = Long.parseLong(values[0]);
+                exitCodes[client][i] = Integer.parseInt(values[1]);
+            }
+        }
+        long wallNanos = System.nanoTime() - start;
+        for(int client = 0; client < clients; client++){
+            if(workers.get(client).waitFor() != 0 || latencies[client].length != m_commands){
+                throw new IOException("Worker " + client + " failed after " + latencies[client].length + " commands");
+            }
+        }
+        return wallNanos;
+    }
+
+    /**
+     Runs every command of every client as new TaskTracker process, clients run in parallel threads
+     @return wall time from start until the last client finished
+     */
+    private static long replaySubprocesses(Path directory, String storage, List<List<String[]>> traces,
+            long[][] latencies, int[][] exitCodes) throws InterruptedException {
+        CountDownLatch startSignal = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>(traces.size());
+        IOException[] failures = new IOException[traces.size()];
+        for(int client = 0; client < traces.size(); client++){
+            int number = client;
+            List<String[]> trace = traces.get(client);
+            latencies[client] = new long[trace.size()];
+            exitCodes[client] = new int[trace.size()];
+            Thread thread = new Thread(() -> {
+                try{
+                    startSignal.await();
+                    for(int i = 0; i < trace.size(); i++){
+                        List<String> command = javaCommand(storage, "TaskTracker");
+                        command.addAll(List.of(trace.get(i)));
+                        command.add("--stats=stats-" + number + ".ndjson");
+                        long start = System.nanoTime();
+                        Process process = new ProcessBuilder(command).directory(directory.toFile())
+                                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                                .redirectError(ProcessBuilder.Redirect.INHERIT).start();
+                        exitCodes[number][i] = process.waitFor();
+                        latencies[number][i] = System.nanoTime() - start;
+                    }
+                } catch (IOException e){
+                    failures[number] = e;
+                } catch (InterruptedException ignored){
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        long start = System.nanoTime();
+        startSignal.countDown();
+        for(Thread thread: threads){
+            thread.join();
+        }
+        long wallNanos = System.nanoTime() - start;
+        for(IOException failure: failures){
+            if(failure != null){
+                throw new IllegalStateException("Client couldn't start TaskTracker process", failure);
+            }
+        }
+        return wallNanos;
+    }
+
+    /**
+     @return bytes written by every command in order of the trace, -1 where --stats line is missing
+     */
+    private static long[] readBytesWritten(Path statsPath, int commands) throws IOException {
+        long[] written = new long[commands];
+        Arrays.fill(written, -1);
+        if(!Files.exists(statsPath)){
+            return written;
+        }
+        try(BufferedReader reader = Files.newBufferedReader(statsPath, StandardCharsets.UTF_8)){
+            String line;
+            for(int i = 0; i < commands && (line = reader.readLine()) != null; i++){
+                // the first match is the whole command, phases follow it
+                Matcher matcher = BYTES_WRITTEN.matcher(line);
+                if(matcher.find()){
+                    written[i] = Long.parseLong(matcher.group(1));
+                }
+            }
+        }
+        return written;
+    }
+
+    private static List<String> javaCommand(String storage, String mainClass){
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        return new ArrayList<String>(List.of(java, "-cp", System.getProperty("java.class.path"),
+                "-Dtasks.storage=" + storage, mainClass));
+    }
+
+    private static Process startWorker(Path directory, String storage, String role, String first, String second) throws IOException {
+        List<String> command = javaCommand(storage, TaskWorkload.class.getName());
+        command.addAll(List.of("worker", role, first, second));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.directory(directory.toFile());
+        builder.redirectOutput(role.equals("replay") ? ProcessBuilder.Redirect.PIPE : ProcessBuilder.Redirect.DISCARD);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        return builder.start();
+    }
+
+    /**
+     Runs in the worker process, current directory is the run directory
+     @return exit code of the worker
+     */
+    private static int runWorker(String[] args) throws IOException {
+        switch(args[1]){
+            case "generate":
+                TaskStore store = TaskTracker.openStore(TaskTracker.storageName());
+                if(store == null){
+                    return 1;
+                }
+                store.saveAll(generateStore(Integer.parseInt(args[2]), Long.parseLong(args[3])));
+                store.awaitBackgroundSave();
+                return 0;
+            case "replay":
+                return replay(Integer.parseInt(args[2]));
+            default:
+                System.err.println("Unknown worker role " + args[1]);
+                return 1;
+        }
+    }
+
+    /**
+     Replays trace of the client through TaskTracker.execute once the harness writes a line to standard input
+     */
+    private static int replay(int client) throws IOException {
+        List<String[]> trace = new ArrayList<String[]>();
+        try(Stream<String> lines = Files.lines(Path.of("trace-" + client + ".txt"), StandardCharsets.UTF_8)){
+            for(String line: lines.toList()){
+                String[] args = TaskBatch.parseLine(line);
+                String[] withStats = Arrays.copyOf(args, args.length + 1);
+                withStats[args.length] = "--stats=stats-" + client + ".ndjson";
+                trace.add(withStats);
+            }
+        } catch (TaskCommandException e){
+            System.err.println("Malformed trace: " + e.getMessage());
+            return 1;
+        }
+        PrintStream report = System.out;
+        report.println(READY);
+        report.flush();
+        new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)).readLine();
+
+        // output of list would go to the harness otherwise
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long[] latencies = new long[trace.size()];
+        int[] exitCodes = new int[trace.size()];
+        for(int i = 0; i < trace.size(); i++){
+            long start = System.nanoTime();
+            exitCodes[i] = TaskTracker.execute(trace.get(i));
+            latencies[i] = System.nanoTime() - start;
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(report, StandardCharsets.UTF_8));
+        for(int i = 0; i < trace.size(); i++){
+            writer.write(latencies[i] + " " + exitCodes[i] + "\n");
+        }
+        writer.flush();
+        return 0;
+    }
+
+    /**
+     Makes synthetic task list sorted by id, the same for the same size and seed
+     */
+    private static List<JSONObject> generateStore(int size, long seed){
+        Random random = new Random(seed);
+        List<JSONObject> JSONObjects = new ArrayList<JSONObject>(size);
+        for(int id = 0; id < size; id++){
+            LocalDateTime createdAt = START.plusSeconds(random.nextInt(365 * 24 * 3600));
+            LocalDateTime updatedAt = createdAt.plusMinutes(random.nextInt(30 * 24 * 60));
+            JSONObjects.add(new JSONObject(id, description(random, id), initialStatus(seed, id), createdAt, updatedAt));
+        }
+        return JSONObjects;
+    }
+
+    /**
+     @return status of task in generated store, traces know it without generating the store
+     */
+    private static TaskStatus initialStatus(long seed, int id){
+        TaskStatus[] statuses = TaskStatus.values();
+        long mixed = (seed * 0x9E3779B97F4A7C15L + id) * 0xC2B2AE3D27D4EB4FL;
+        return statuses[Math.floorMod(mixed >>> 17, statuses.length)];
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try(Stream<Path> paths = Files.walk(directory)){
+            for(Path path: paths.sorted(Comparator.reverseOrder()).toList()){
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package taskbench;
+
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ Parsing and serializing tasks.json contents in memory, without file access
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class JSONBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    private TaskFixture m_fixture;
+    private List<?> m_tasks;
+    private String m_json;
+
+    @Setup
+    public void setUp() throws Exception {
+        m_fixture = TaskFixture.get();
+        m_tasks = m_fixture.generate(size);
+        m_json = m_fixture.toJSON(m_tasks);
+    }
+
+    @Benchmark
+    public List<?> parse() throws Exception {
+        return m_fixture.parse(m_json);
+    }
+
+    @Benchmark
+    public void serialize() throws Exception {
+        m_fixture.serialize(m_tasks, Writer.nullWriter());
+    }
+}
@@ -0,0 +1,60 @@
+package taskbench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ Lookup by id and filtered listing against loaded list, output of list is discarded
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class QueryBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"json", "binary"})
+    public String storage;
+
+    private TaskFixture m_fixture;
+    private List<?> m_tasks;
+    private PrintStream m_out;
+    private int m_nextId;
+
+    @Setup
+    public void setUp() throws Exception {
+        m_fixture = TaskFixture.get();
+        m_fixture.saveAll(storage, m_fixture.generate(size));
+        m_tasks = m_fixture.load(storage);
+        m_out = new PrintStream(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public int lookupById() {
+        // large prime step visits ids in scattered order
+        m_nextId = (m_nextId + 7919) % size;
+        return m_fixture.indexOf(m_tasks, m_nextId);
+    }
+
+    @Benchmark
+    public void listInProgress() throws Exception {
+        m_fixture.list(m_tasks, "in-progress", m_out);
+    }
+}
@@ -0,0 +1,64 @@
+package taskbench;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ Whole TaskTracker.main run the way shell calls it: lock, load, run command, save.
+ JVM start isn't included
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class RoundTripBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"json", "journal", "binary"})
+    public String storage;
+
+    private TaskFixture m_fixture;
+    private PrintStream m_stdout;
+    private int m_nextId;
+
+    @Setup
+    public void setUp() throws Exception {
+        m_fixture = TaskFixture.get();
+        m_fixture.saveAll(storage, m_fixture.generate(size));
+        m_stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown(){
+        System.setOut(m_stdout);
+    }
+
+    @Benchmark
+    public void markInProgress() {
+        m_nextId = (m_nextId + 7919) % size;
+        m_fixture.main(storage, new String[]{"mark-in-progress", Integer.toString(m_nextId)});
+    }
+
+    @Benchmark
+    public void listInProgress() {
+        m_fixture.main(storage, new String[]{"list", "in-progress"});
+    }
+}
@@ -0,0 +1,56 @@
+package taskbench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ Loading and saving the whole task list through every storage, files are in the working directory
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class StorageBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    @Param({"json", "journal", "binary"})
+    public String storage;
+
+    private TaskFixture m_fixture;
+    private List<?> m_tasks;
+
+    @Setup
+    public void setUp() throws Exception {
+        m_fixture = TaskFixture.get();
+        m_tasks = m_fixture.generate(size);
+        m_fixture.saveAll(storage, m_tasks);
+    }
+
+    /**
+     Binary storage maps the file and reads records lazily, so its load doesn't touch every task
+     */
+    @Benchmark
+    public List<?> load() throws Exception {
+        return m_fixture.load(storage);
+    }
+
+    @Benchmark
+    public void save() throws Exception {
+        m_fixture.saveAll(storage, m_tasks);
+    }
+}
@@ -0,0 +1,59 @@
+package taskbench;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ Access to task tracker classes for benchmarks.
+ Task tracker lives in the default package, which can't be imported from named packages
+ and JMH doesn't accept benchmarks in the default package, so benchmarks go through this
+ interface implemented by TaskBenchFixture in the default package
+ */
+public interface TaskFixture {
+    /**
+     @return fixture implemented by TaskBenchFixture
+     */
+    static TaskFixture get(){
+        try{
+            return (TaskFixture) Class.forName("TaskBenchFixture").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e){
+            throw new IllegalStateException("TaskBenchFixture isn't on the classpath", e);
+        }
+    }
+
+    /**
+     Makes synthetic task list sorted by id with mixed statuses, descriptions and dates,
+     the same for the same count
+     */
+    List<?> generate(int count);
+
+    /**
+     Replaces tasks of storage in the working directory, see TASKS_STORAGE for names
+     */
+    void saveAll(String storage, List<?> tasks) throws IOException;
+
+    List<?> load(String storage) throws Exception;
+
+    String toJSON(List<?> tasks) throws IOException;
+
+    List<?> parse(String json) throws Exception;
+
+    void serialize(List<?> tasks, Writer writer) throws IOException;
+
+    /**
+     @return index of task with given id, negative if there is none
+     */
+    int indexOf(List<?> tasks, int id);
+
+    /**
+     Runs "list" command with given status filter against the list
+     */
+    void list(List<?> tasks, String status, PrintStream out) throws Exception;
+
+    /**
+     Runs TaskTracker.main in the working directory with given storage (sets tasks.storage property)
+     */
+    void main(String storage, String[] args);
+}
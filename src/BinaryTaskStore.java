@@ -0,0 +1,367 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ Binary storage read through memory mapping (tasks.bin).
+ File layout:
+ header (40 bytes): magic, format version, record count, record capacity, heap start, heap length,
+ length of dead heap bytes no record points to;
+ records (capacity * 33 bytes): id int, status byte, createdAt and updatedAt as epoch millis (UTC),
+ description offset in heap long, description length in bytes int;
+ heap: UTF-8 descriptions one after another.
+ Records are fixed-width so single task commands map and touch only a few pages,
+ updates are patched in place and added tasks are written into spare record capacity.
+ Changed descriptions are appended to the heap, which is written and committed by the header
+ before any record points to it, so interrupted save never leaves record pointing past the heap.
+ Old descriptions stay in the heap as dead bytes, once they are more than half of it the file is rewritten.
+ Files of version 1 (32 bytes header without dead length) are read and rewritten as version 2 by the next save.
+ Timestamps are kept with millisecond precision
+ */
+public class BinaryTaskStore implements TaskStore, TaskChangeListener {
+    static final int MAGIC = 0x54534B42; // "TSKB"
+    static final int FORMAT_VERSION = 2;
+    static final int HEADER_SIZE = 40;
+    private static final int VERSION_1_HEADER_SIZE = 32;
+
+    static final int RECORD_SIZE = 33;
+    static final int STATUS = 4;
+    static final int CREATED_AT = 5;
+    static final int UPDATED_AT = 13;
+    static final int DESCRIPTION_OFFSET = 21;
+    static final int DESCRIPTION_LENGTH = 29;
+
+    private static final int COUNT_POSITION = 8;
+    private static final int HEAP_LENGTH_POSITION = 24;
+    private static final int DEAD_LENGTH_POSITION = 32;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private final Path m_path;
+    private final Map<Integer, JSONObject> m_updated = new LinkedHashMap<Integer, JSONObject>();
+    // descriptions written to the heap by in-place saves since mapping, their records point past the mapped heap
+    private final Map<Integer, String> m_savedDescriptions = new HashMap<Integer, String>();
+    private MappedTaskList m_loaded;
+    private int m_savedAppended;
+    private int m_capacity;
+    private long m_heapStart;
+    private long m_heapLength;
+    private long m_deadLength;
+    private int m_version;
+
+    BinaryTaskStore(Path path){
+        m_path = path;
+    }
+
+    /**
+     Maps tasks.bin and returns lazy list over it, see MappedTaskList
+     */
+    @Override
+    public List<JSONObject> load() throws IOException {
+        if(!Files.exists(m_path)){
+            return new ArrayList<JSONObject>();
+        }
+        try(FileChannel channel = FileChannel.open(m_path, StandardOpenOption.READ)){
+            // file of version 1 is longer than 40 bytes as well, it has room for at least 64 records
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            m_version = header.getInt(4);
+            if(header.getInt(0) != MAGIC || (m_version != FORMAT_VERSION && m_version != 1)){
+                throw new IOException(m_path + " is not a task store file of version " + FORMAT_VERSION);
+            }
+            int count = header.getInt(COUNT_POSITION);
+            m_capacity = header.getInt(12);
+            m_heapStart = header.getLong(16);
+            m_heapLength = header.getLong(HEAP_LENGTH_POSITION);
+            m_deadLength = m_version == 1 ? 0 : header.getLong(DEAD_LENGTH_POSITION);
+            if(m_heapLength > Integer.MAX_VALUE){
+                throw new IOException("Description heap of " + m_path + " is larger than 2 GiB");
+            }
+
+            long recordsStart = m_version == 1 ? VERSION_1_HEADER_SIZE : HEADER_SIZE;
+            ByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, recordsStart, (long) count * RECORD_SIZE);
+            ByteBuffer heap = channel.map(FileChannel.MapMode.READ_ONLY, m_heapStart, m_heapLength);
+            m_loaded = new MappedTaskList(records, heap, count);
+            m_savedAppended = 0;
+            m_updated.clear();
+            m_savedDescriptions.clear();
+            return m_loaded;
+        }
+    }
+
+    @Override
+    public TaskChangeListener changes() {
+        return this;
+    }
+
+    @Override
+    public void taskAdded(JSONObject task) {
+        // added tasks are kept at the end of MappedTaskList
+    }
+
+    @Override
+    public void taskUpdated(JSONObject task) {
+        m_updated.put(task.getId(), task);
+    }
+
+    @Override
+    public void taskDeleted(int id) {
+        // deletion materializes MappedTaskList, which makes save rewrite the file
+        m_updated.remove(id);
+    }
+
+    /**
+     Patches updated records in place and writes added tasks into spare capacity,
+     rewrites whole file if tasks were deleted, capacity ran out, more than half of the heap would be dead
+     or the file is of version 1.
+     Order of writes keeps the file readable at every step: new descriptions are appended to the heap,
+     header commits the longer heap, then records are written and header commits the new record count
+     */
+    @Override
+    public void save(List<JSONObject> JSONObjects) throws IOException {
+        if(JSONObjects != m_loaded || m_loaded.isMaterialized() || m_version != FORMAT_VERSION
+                || m_loaded.getMappedCount() + m_loaded.getAppended().size() > m_capacity){
+            saveAll(JSONObjects);
+            return;
+        }
+        int persistedCount = m_loaded.getMappedCount() + m_savedAppended;
+        List<JSONObject> appended = m_loaded.getAppended();
+        appended = appended.subList(m_savedAppended, appended.size());
+
+        // added tasks and tasks with changed description get whole record with description appended to the heap,
+        // the rest get status and updatedAt patched
+        List<JSONObject> written = new ArrayList<JSONObject>(appended);
+        List<Long> writtenPositions = new ArrayList<Long>();
+        for(int i = 0; i < appended.size(); i++){
+            writtenPositions.add(HEADER_SIZE + (long) (persistedCount + i) * RECORD_SIZE);
+        }
+        List<JSONObject> patched = new ArrayList<JSONObject>();
+        List<Long> patchedPositions = new ArrayList<Long>();
+        long deadLength = m_deadLength;
+        for(JSONObject task: m_updated.values()){
+            int index = indexOf(task.getId());
+            if(index < 0 || index >= persistedCount){
+                // not written yet, goes with added tasks
+                continue;
+            }
+            long recordPosition = HEADER_SIZE + (long) index * RECORD_SIZE;
+            String savedDescription = savedDescription(task.getId(), index);
+            if(task.getDescription().equals(savedDescription)){
+                patched.add(task);
+                patchedPositions.add(recordPosition);
+            } else {
+                written.add(task);
+                writtenPositions.add(recordPosition);
+                deadLength += savedDescription.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        byte[][] descriptions = new byte[written.size()][];
+        long heapLength = m_heapLength;
+        for(int i = 0; i < descriptions.length; i++){
+            descriptions[i] = written.get(i).getDescription().getBytes(StandardCharsets.UTF_8);
+            heapLength += descriptions[i].length;
+        }
+        if(deadLength > heapLength / 2){
+            saveAll(JSONObjects);
+            return;
+        }
+        if(heapLength > Integer.MAX_VALUE){
+            throw new IOException("Description heap of " + m_path + " is larger than 2 GiB");
+        }
+
+        try(FileChannel channel = FileChannel.open(m_path, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            long[] offsets = new long[descriptions.length];
+            if(descriptions.length != 0){
+                long offset = m_heapLength;
+                for(int i = 0; i < descriptions.length; i++){
+                    offsets[i] = offset;
+                    offset += writeFully(channel, ByteBuffer.wrap(descriptions[i]), m_heapStart + offset);
+                }
+                m_heapLength = heapLength;
+                m_deadLength = deadLength;
+                if(written.size() > appended.size()){
+                    // records of saved tasks are about to point to the new descriptions, header commits them first
+                    channel.force(false);
+                    writeHeader(channel, persistedCount);
+                }
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            for(int i = 0; i < descriptions.length; i++){
+                JSONObject task = written.get(i);
+                record.clear();
+                putRecord(record, task, offsets[i], descriptions[i].length);
+                record.flip();
+                writeFully(channel, record, writtenPositions.get(i));
+                m_savedDescriptions.put(task.getId(), task.getDescription());
+            }
+            for(int i = 0; i < patched.size(); i++){
+                JSONObject task = patched.get(i);
+                long recordPosition = patchedPositions.get(i);
+                record.clear();
+                record.put((byte) task.getStatus().ordinal());
+                record.flip();
+                writeFully(channel, record, recordPosition + STATUS);
+                record.clear();
+                record.putLong(MappedTaskList.toEpochMilli(task.getUpdatedAt()));
+                record.flip();
+                writeFully(channel, record, recordPosition + UPDATED_AT);
+            }
+            channel.force(false);
+            if(!appended.isEmpty()){
+                // records past the old count aren't read until header counts them together with their descriptions
+                writeHeader(channel, persistedCount + appended.size());
+            }
+        }
+        m_savedAppended = m_loaded.getAppended().size();
+        m_updated.clear();
+    }
+
+    /**
+     Writes header fields after magic and version and forces them to disk
+     */
+    private void writeHeader(FileChannel channel, int count) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE - COUNT_POSITION);
+        header.putInt(count);
+        header.putInt(m_capacity);
+        header.putLong(m_heapStart);
+        header.putLong(m_heapLength);
+        header.putLong(m_deadLength);
+        header.flip();
+        writeFully(channel, header, COUNT_POSITION);
+        channel.force(false);
+    }
+
+    /**
+     Writes whole list into temporary file with spare record capacity and renames it over tasks.bin
+     */
+    @Override
+    public void saveAll(List<JSONObject> JSONObjects) throws IOException {
+        int count = JSONObjects.size();
+        int capacity = count + count / 4 + 64;
+        long heapStart = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        long heapLength = 0;
+
+        Path temporaryPath = m_path.resolveSibling(m_path.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)){
+            ByteBuffer records = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE / RECORD_SIZE * RECORD_SIZE);
+            ByteBuffer heap = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            long recordsPosition = HEADER_SIZE;
+            long heapPosition = heapStart;
+
+            // tasks of mapped list are read without being kept, so rewrite doesn't hold every task in memory
+            MappedTaskList mapped = JSONObjects instanceof MappedTaskList list ? list : null;
+            for(int i = 0; i < count; i++){
+                JSONObject task = mapped != null ? mapped.readAt(i) : JSONObjects.get(i);
+                byte[] description = task.getDescription().getBytes(StandardCharsets.UTF_8);
+                if(records.remaining() < RECORD_SIZE){
+                    records.flip();
+                    recordsPosition += writeFully(channel, records, recordsPosition);
+                    records.clear();
+                }
+                putRecord(records, task, heapLength, description.length);
+                heapLength += description.length;
+
+                int written = 0;
+                while(written < description.length){
+                    if(!heap.hasRemaining()){
+                        heap.flip();
+                        heapPosition += writeFully(channel, heap, heapPosition);
+                        heap.clear();
+                    }
+                    int chunk = Math.min(heap.remaining(), description.length - written);
+                    heap.put(description, written, chunk);
+                    written += chunk;
+                }
+            }
+            records.flip();
+            writeFully(channel, records, recordsPosition);
+            heap.flip();
+            writeFully(channel, heap, heapPosition);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(FORMAT_VERSION);
+            header.putInt(count);
+            header.putInt(capacity);
+            header.putLong(heapStart);
+            header.putLong(heapLength);
+            header.putLong(0);
+            header.flip();
+            writeFully(channel, header, 0);
+            channel.force(false);
+        }
+        Files.move(temporaryPath, m_path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        m_loaded = null;
+        m_savedAppended = 0;
+        m_updated.clear();
+        m_savedDescriptions.clear();
+    }
+
+    /**
+     @return description the record of persisted task points to, null if it isn't known without reading the record
+     */
+    private String savedDescription(int id, int index){
+        String saved = m_savedDescriptions.get(id);
+        if(saved != null){
+            return saved;
+        }
+        return index < m_loaded.getMappedCount() ? m_loaded.descriptionAt(index) : null;
+    }
+
+    /**
+     Binary search over mapped id column and tasks added after mapping
+     @return index of task with given id or -1
+     */
+    private int indexOf(int id){
+        int firstIndex = 0;
+        int lastIndex = m_loaded.size() - 1;
+        while(firstIndex <= lastIndex){
+            int midIndex = (firstIndex + lastIndex) >>> 1;
+            int midID = m_loaded.idAt(midIndex);
+            if(midID == id){
+                return midIndex;
+            } else if(midID > id){
+                lastIndex = midIndex - 1;
+            } else {
+                firstIndex = midIndex + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static void putRecord(ByteBuffer buffer, JSONObject task, long descriptionOffset, int descriptionLength){
+        buffer.putInt(task.getId());
+        buffer.put((byte) task.getStatus().ordinal());
+        buffer.putLong(MappedTaskList.toEpochMilli(task.getCreatedAt()));
+        buffer.putLong(MappedTaskList.toEpochMilli(task.getUpdatedAt()));
+        buffer.putLong(descriptionOffset);
+        buffer.putInt(descriptionLength);
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while(buffer.hasRemaining()){
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()){
+            if(channel.read(buffer, position + buffer.position()) == -1){
+                throw new IOException("Unexpected end of " + channel);
+            }
+        }
+    }
+}
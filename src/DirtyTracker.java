@@ -0,0 +1,51 @@
+/**
+ Listener wrapper that remembers if any change was made to the task list,
+ so commands that only read tasks don't persist anything
+ */
+public class DirtyTracker implements TaskChangeListener {
+    private final TaskChangeListener m_delegate;
+    private int m_changeCount;
+
+    DirtyTracker(TaskChangeListener delegate){
+        m_delegate = delegate;
+    }
+
+    @Override
+    public void taskAdded(JSONObject task) {
+        m_changeCount++;
+        m_delegate.taskAdded(task);
+    }
+
+    @Override
+    public void taskUpdated(JSONObject task) {
+        m_changeCount++;
+        m_delegate.taskUpdated(task);
+    }
+
+    @Override
+    public void taskDeleted(int id) {
+        m_changeCount++;
+        m_delegate.taskDeleted(id);
+    }
+
+    @Override
+    public void tasksDeleted(int[] ids) {
+        m_changeCount += ids.length;
+        m_delegate.tasksDeleted(ids);
+    }
+
+    public boolean isDirty(){
+        return m_changeCount != 0;
+    }
+
+    /**
+     Forgets changes reported so far, called after they were saved
+     */
+    public void markClean(){
+        m_changeCount = 0;
+    }
+
+    public int getChangeCount(){
+        return m_changeCount;
+    }
+}
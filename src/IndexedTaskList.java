@@ -0,0 +1,192 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ List view over memory-mapped tasks.json and its TaskOffsetIndex.
+ Task object is parsed only when it gets accessed, ids are read from the index.
+ Removing keeps the view by remembering removed entries, adding to the end keeps it as well,
+ any other structural change parses every task into ordinary list first
+ */
+public class IndexedTaskList extends AbstractList<JSONObject> implements RandomAccess {
+    private final ByteBuffer m_json;
+    private final TaskOffsetIndex m_index;
+    private final Map<Integer, JSONObject> m_loaded = new HashMap<Integer, JSONObject>();
+    private final List<JSONObject> m_appended = new ArrayList<JSONObject>();
+    private int[] m_removed = new int[0];
+    private List<JSONObject> m_materialized;
+
+    /**
+     @param json mapped tasks.json
+     @param index index that matches the mapped file
+     */
+    IndexedTaskList(ByteBuffer json, TaskOffsetIndex index){
+        m_json = json;
+        m_index = index;
+    }
+
+    @Override
+    public JSONObject get(int index) {
+        if(m_materialized != null){
+            return m_materialized.get(index);
+        }
+        if(index < 0 || index >= size()){
+            throw new IndexOutOfBoundsException(index);
+        }
+        int indexedCount = getIndexedCount();
+        if(index >= indexedCount){
+            return m_appended.get(index - indexedCount);
+        }
+        int entry = entryOf(index);
+        JSONObject task = m_loaded.get(entry);
+        if(task == null){
+            task = readTask(entry);
+            m_loaded.put(entry, task);
+        }
+        return task;
+    }
+
+    @Override
+    public int size() {
+        if(m_materialized != null){
+            return m_materialized.size();
+        }
+        return getIndexedCount() + m_appended.size();
+    }
+
+    @Override
+    public void add(int index, JSONObject task) {
+        if(m_materialized == null && index == size()){
+            m_appended.add(task);
+        } else {
+            materialize().add(index, task);
+        }
+        modCount++;
+    }
+
+    @Override
+    public JSONObject set(int index, JSONObject task) {
+        return materialize().set(index, task);
+    }
+
+    @Override
+    public JSONObject remove(int index) {
+        modCount++;
+        if(m_materialized != null){
+            return m_materialized.remove(index);
+        }
+        int indexedCount = getIndexedCount();
+        if(index >= indexedCount){
+            return m_appended.remove(index - indexedCount);
+        }
+        JSONObject task = get(index);
+        int entry = entryOf(index);
+        int position = -Arrays.binarySearch(m_removed, entry) - 1;
+        int[] removed = new int[m_removed.length + 1];
+        System.arraycopy(m_removed, 0, removed, 0, position);
+        removed[position] = entry;
+        System.arraycopy(m_removed, position, removed, position + 1, m_removed.length - position);
+        m_removed = removed;
+        m_loaded.remove(entry);
+        return task;
+    }
+
+    /**
+     Reads task at index without keeping it in the list, for passing over every task once (export)
+     */
+    public JSONObject readAt(int index){
+        if(m_materialized != null || index >= getIndexedCount()){
+            return get(index);
+        }
+        int entry = entryOf(index);
+        JSONObject task = m_loaded.get(entry);
+        return task != null ? task : readTask(entry);
+    }
+
+    /**
+     Reads id of the task at index from the offset index without parsing the task
+     */
+    public int idAt(int index){
+        if(m_materialized != null || index >= getIndexedCount()){
+            return get(index).getId();
+        }
+        return m_index.idAt(entryOf(index));
+    }
+
+    /**
+     @return index entry of list index, skipping removed entries
+     */
+    private int entryOf(int index){
+        int entry = index;
+        for(int removed: m_removed){
+            if(removed > entry){
+                break;
+            }
+            entry++;
+        }
+        return entry;
+    }
+
+    /**
+     @return true if list was changed in other way than adding to the end or removing,
+     so index entries no longer match list indexes
+     */
+    public boolean isMaterialized(){
+        return m_materialized != null;
+    }
+
+    public TaskOffsetIndex getIndex(){
+        return m_index;
+    }
+
+    /**
+     @return number of tasks in the list that come from mapped file
+     */
+    public int getIndexedCount(){
+        return m_index.size() - m_removed.length;
+    }
+
+    /**
+     @return sorted index entries of removed tasks
+     */
+    public int[] getRemovedEntries(){
+        return m_removed;
+    }
+
+    /**
+     @return tasks added to the end of the list since it was mapped
+     */
+    public List<JSONObject> getAppended(){
+        return m_appended;
+    }
+
+    private JSONObject readTask(int entry){
+        byte[] bytes = new byte[m_index.lengthAt(entry)];
+        m_json.get((int) m_index.offsetAt(entry), bytes);
+        try{
+            return new JSONParser(new String(bytes, StandardCharsets.UTF_8)).parseSingleTask();
+        } catch (JSONParseException e){
+            throw new IllegalStateException("tasks.json doesn't match its offset index: " + e.getReason(), e);
+        }
+    }
+
+    private List<JSONObject> materialize(){
+        if(m_materialized == null){
+            List<JSONObject> JSONObjects = new ArrayList<JSONObject>(size() + 1);
+            int indexedCount = getIndexedCount();
+            for(int i = 0; i < indexedCount; i++){
+                JSONObjects.add(get(i));
+            }
+            JSONObjects.addAll(m_appended);
+            m_materialized = JSONObjects;
+            m_loaded.clear();
+        }
+        return m_materialized;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ Thrown when tasks.json contents can't be parsed,
+ carries line and column (both starting from 1) of the place where parsing stopped
+ */
+public class JSONParseException extends Exception {
+    private final String m_reason;
+    private final int m_line;
+    private final int m_column;
+
+    JSONParseException(String message, int line, int column){
+        this("tasks.json", message, line, column);
+    }
+
+    JSONParseException(String source, String message, int line, int column){
+        super("Malformed " + source + " at line " + line + ", column " + column + ": " + message);
+        m_reason = message;
+        m_line = line;
+        m_column = column;
+    }
+
+    public String getReason() {
+        return m_reason;
+    }
+
+    public int getLine() {
+        return m_line;
+    }
+
+    public int getColumn() {
+        return m_column;
+    }
+}
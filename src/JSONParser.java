@@ -0,0 +1,553 @@
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ Single pass scanner that builds JSONObject objects straight from tasks.json contents.
+ Walks the input once without splitting or copying it, the only allocations are
+ the resulting list, JSONObject objects and their fields.
+ tasks.json of the first releases has ids in quotes and descriptions written without escaping,
+ so description of task object with quoted id is read as it is, see parseLegacyString.
+ JSONWriter writes ids as numbers, task objects it rewrites are read as JSON from then on
+ */
+public class JSONParser {
+    private final CharSequence m_input;
+    private final int m_length;
+    private int m_position;
+    private int[] m_taskRanges;
+    private int m_taskCount;
+
+    JSONParser(CharSequence input){
+        m_input = input;
+        m_length = input.length();
+        m_position = 0;
+    }
+
+    /**
+     Parses whole input as {"tasks": [...]} object, unknown keys are skipped
+     @return list of parsed JSONObject objects in file order, empty list if input is blank
+     @throws JSONParseException if input isn't valid JSON or task object misses a field
+     */
+    public List<JSONObject> parse() throws JSONParseException {
+        List<JSONObject> JSONObjects = new ArrayList<JSONObject>();
+        skipWhitespace();
+        if(m_position == m_length){
+            return JSONObjects;
+        }
+
+        expect('{');
+        skipWhitespace();
+        if(peek() != '}'){
+            do {
+                skipWhitespace();
+                int keyStart = stringStart();
+                int keyEnd = stringEnd();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                if(keyEquals(keyStart, keyEnd, "tasks")){
+                    parseTasks(JSONObjects);
+                } else {
+                    skipValue();
+                }
+                skipWhitespace();
+            } while(consume(','));
+        }
+        expect('}');
+
+        skipWhitespace();
+        if(m_position != m_length){
+            throw error("Unexpected content after end of JSON object");
+        }
+        return JSONObjects;
+    }
+
+    /**
+     Makes parse remember where every task object starts and ends, see getTaskRanges
+     */
+    public void recordTaskRanges(){
+        m_taskRanges = new int[64];
+    }
+
+    /**
+     @return start and end (exclusive) char index of every parsed task object in file order,
+     two ints per task, null if recordTaskRanges wasn't called before parse
+     */
+    public int[] getTaskRanges(){
+        return m_taskRanges;
+    }
+
+    /**
+     Parses input that holds exactly one task object, used for journal records
+     @return parsed task
+     @throws JSONParseException if input isn't single valid task object
+     */
+    public JSONObject parseSingleTask() throws JSONParseException {
+        skipWhitespace();
+        JSONObject task = parseTask();
+        skipWhitespace();
+        if(m_position != m_length){
+            throw error("Unexpected content after end of task object");
+        }
+        return task;
+    }
+
+    private void parseTasks(List<JSONObject> JSONObjects) throws JSONParseException {
+        expect('[');
+        skipWhitespace();
+        if(consume(']')){
+            return;
+        }
+        do {
+            skipWhitespace();
+            int taskStart = m_position;
+            JSONObjects.add(parseTask());
+            if(m_taskRanges != null){
+                recordTaskRange(taskStart, m_position);
+            }
+            skipWhitespace();
+        } while(consume(','));
+        expect(']');
+    }
+
+    private void recordTaskRange(int start, int end){
+        if(2 * m_taskCount + 2 > m_taskRanges.length){
+            m_taskRanges = Arrays.copyOf(m_taskRanges, m_taskRanges.length * 2);
+        }
+        m_taskRanges[2 * m_taskCount] = start;
+        m_taskRanges[2 * m_taskCount + 1] = end;
+        m_taskCount++;
+    }
+
+    /**
+     Parses one task object, fields can go in any order
+     */
+    private JSONObject parseTask() throws JSONParseException {
+        int objectStart = m_position;
+        expect('{');
+
+        int id = 0;
+        String description = null;
+        TaskStatus status = null;
+        LocalDateTime createdAt = null;
+        LocalDateTime updatedAt = null;
+        boolean hasID = false;
+        boolean legacy = false;
+
+        skipWhitespace();
+        if(peek() != '}'){
+            do {
+                skipWhitespace();
+                int keyStart = stringStart();
+                int keyEnd = stringEnd();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+
+                if(keyEquals(keyStart, keyEnd, "id")){
+                    legacy = peek() == '"';
+                    id = parseInt();
+                    hasID = true;
+                } else if(keyEquals(keyStart, keyEnd, "description")){
+                    description = legacy ? parseLegacyString() : parseString();
+                } else if(keyEquals(keyStart, keyEnd, "status")){
+                    status = parseStatus();
+                } else if(keyEquals(keyStart, keyEnd, "createdAt")){
+                    createdAt = parseDateTime();
+                } else if(keyEquals(keyStart, keyEnd, "updatedAt")){
+                    updatedAt = parseDateTime();
+                } else {
+                    skipValue();
+                }
+                skipWhitespace();
+            } while(consume(','));
+        }
+        expect('}');
+
+        if(!hasID || description == null || status == null || createdAt == null || updatedAt == null){
+            m_position = objectStart;
+            throw error("Task object is missing one of the fields: id, description, status, createdAt, updatedAt");
+        }
+        return new JSONObject(id, description, status, createdAt, updatedAt);
+    }
+
+    /**
+     Parses integer written either as JSON number or as digits in quotes ("id": "5")
+     */
+    private int parseInt() throws JSONParseException {
+        boolean quoted = consume('"');
+        int start = m_position;
+        boolean negative = consume('-');
+        long value = 0;
+        while(m_position < m_length && isDigit(m_input.charAt(m_position))){
+            value = value * 10 + (m_input.charAt(m_position) - '0');
+            if(value > (long) Integer.MAX_VALUE + 1){
+                m_position = start;
+                throw error("Number is out of integer range");
+            }
+            m_position++;
+        }
+        if(m_position == start || (negative && m_position == start + 1)){
+            throw error("Expected integer");
+        }
+        if(quoted){
+            expect('"');
+        }
+        value = negative ? -value : value;
+        if(value > Integer.MAX_VALUE){
+            m_position = start;
+            throw error("Number is out of integer range");
+        }
+        return (int) value;
+    }
+
+    /**
+     Parses status written as ordinal of TaskStatus enum
+     */
+    private TaskStatus parseStatus() throws JSONParseException {
+        int start = m_position;
+        int statusCode = parseInt();
+        TaskStatus[] statuses = TaskStatus.values();
+        if(statusCode < 0 || statusCode >= statuses.length){
+            m_position = start;
+            throw error("Unknown status code " + statusCode);
+        }
+        return statuses[statusCode];
+    }
+
+    /**
+     Parses quoted ISO-8601 date-time (yyyy-MM-ddTHH:mm[:ss[.fraction]]) as written by LocalDateTime.toString
+     */
+    private LocalDateTime parseDateTime() throws JSONParseException {
+        expect('"');
+        int start = m_position;
+        int year = digits(4);
+        expect('-');
+        int month = digits(2);
+        expect('-');
+        int day = digits(2);
+        expect('T');
+        int hour = digits(2);
+        expect(':');
+        int minute = digits(2);
+        int second = 0;
+        int nano = 0;
+        if(consume(':')){
+            second = digits(2);
+            if(consume('.')){
+                int fractionDigits = 0;
+                while(m_position < m_length && isDigit(m_input.charAt(m_position))){
+                    if(fractionDigits == 9){
+                        throw error("Fraction of second is longer than 9 digits");
+                    }
+                    nano = nano * 10 + (m_input.charAt(m_position) - '0');
+                    fractionDigits++;
+                    m_position++;
+                }
+                if(fractionDigits == 0){
+                    throw error("Expected fraction of second");
+                }
+                for(; fractionDigits < 9; fractionDigits++){
+                    nano *= 10;
+                }
+            }
+        }
+        expect('"');
+        try{
+            return LocalDateTime.of(year, month, day, hour, minute, second, nano);
+        } catch (DateTimeException e){
+            m_position = start;
+            throw error("Invalid date-time: " + e.getMessage());
+        }
+    }
+
+    private int digits(int count) throws JSONParseException {
+        int value = 0;
+        for(int i = 0; i < count; i++){
+            if(m_position >= m_length || !isDigit(m_input.charAt(m_position))){
+                throw error("Expected digit");
+            }
+            value = value * 10 + (m_input.charAt(m_position) - '0');
+            m_position++;
+        }
+        return value;
+    }
+
+    /**
+     Parses JSON string, input is copied only once into the resulting String,
+     StringBuilder is used only when string contains escape sequences
+     */
+    private String parseString() throws JSONParseException {
+        int start = stringStart();
+        int end = stringEnd();
+
+        int escape = indexOf('\\', start, end);
+        if(escape == -1){
+            return m_input.subSequence(start, end).toString();
+        }
+
+        StringBuilder builder = new StringBuilder(end - start);
+        int i = start;
+        while(i < end){
+            char c = m_input.charAt(i);
+            if(c != '\\'){
+                builder.append(c);
+                i++;
+                continue;
+            }
+            char escaped = m_input.charAt(i + 1);
+            switch(escaped){
+                case '"', '\\', '/' -> builder.append(escaped);
+                case 'b' -> builder.append('\b');
+                case 'f' -> builder.append('\f');
+                case 'n' -> builder.append('\n');
+                case 'r' -> builder.append('\r');
+                case 't' -> builder.append('\t');
+                case 'u' -> {
+                    builder.append((char) hexValue(i + 2));
+                    i += 4;
+                }
+                default -> {
+                    m_position = i;
+                    throw error("Unknown escape sequence \\" + escaped);
+                }
+            }
+            i += 2;
+        }
+        return builder.toString();
+    }
+
+    /**
+     Parses description written by the first releases, which put it between quotes as it was:
+     backslashes and line breaks are part of the text and quote ends the string only
+     when the end of the object or comma with the next key follows it
+     */
+    private String parseLegacyString() throws JSONParseException {
+        int start = stringStart();
+        for(int i = start; i < m_length; i++){
+            if(m_input.charAt(i) == '"' && endsLegacyString(i + 1)){
+                m_position = i + 1;
+                return m_input.subSequence(start, i).toString();
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    /**
+     @return true if position is followed by the end of the object or by comma and the next key
+     */
+    private boolean endsLegacyString(int position){
+        position = whitespaceEnd(position);
+        if(position == m_length || m_input.charAt(position) == '}'){
+            return true;
+        }
+        if(m_input.charAt(position) != ','){
+            return false;
+        }
+        position = whitespaceEnd(position + 1);
+        if(position == m_length || m_input.charAt(position) != '"'){
+            return false;
+        }
+        int keyEnd = position + 1;
+        while(keyEnd < m_length && m_input.charAt(keyEnd) != '"' && m_input.charAt(keyEnd) != '\n'){
+            keyEnd++;
+        }
+        if(keyEnd == m_length || m_input.charAt(keyEnd) != '"'){
+            return false;
+        }
+        position = whitespaceEnd(keyEnd + 1);
+        return position < m_length && m_input.charAt(position) == ':';
+    }
+
+    /**
+     Consumes opening quote of the string
+     @return position of first character inside quotes
+     */
+    private int stringStart() throws JSONParseException {
+        expect('"');
+        return m_position;
+    }
+
+    /**
+     Moves past closing quote of the string started by stringStart
+     @return position of closing quote
+     */
+    private int stringEnd() throws JSONParseException {
+        while(m_position < m_length){
+            char c = m_input.charAt(m_position);
+            if(c == '"'){
+                return m_position++;
+            }
+            if(c == '\\'){
+                m_position++;
+                if(m_position < m_length && m_input.charAt(m_position) == 'u'){
+                    hexValue(m_position + 1);
+                    m_position += 4;
+                }
+            } else if(c < 0x20){
+                throw error("Unescaped control character in string");
+            }
+            m_position++;
+        }
+        throw error("Unterminated string");
+    }
+
+    private int hexValue(int start) throws JSONParseException {
+        if(start + 4 > m_length){
+            m_position = start;
+            throw error("Unterminated unicode escape");
+        }
+        int value = 0;
+        for(int i = start; i < start + 4; i++){
+            int digit = Character.digit(m_input.charAt(i), 16);
+            if(digit == -1){
+                m_position = i;
+                throw error("Invalid unicode escape");
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    /**
+     Skips any JSON value, used for keys this parser doesn't know about
+     */
+    private void skipValue() throws JSONParseException {
+        char c = peek();
+        switch(c){
+            case '"' -> {
+                stringStart();
+                stringEnd();
+            }
+            case '{' -> {
+                m_position++;
+                skipWhitespace();
+                if(peek() != '}'){
+                    do {
+                        skipWhitespace();
+                        stringStart();
+                        stringEnd();
+                        skipWhitespace();
+                        expect(':');
+                        skipWhitespace();
+                        skipValue();
+                        skipWhitespace();
+                    } while(consume(','));
+                }
+                expect('}');
+            }
+            case '[' -> {
+                m_position++;
+                skipWhitespace();
+                if(peek() != ']'){
+                    do {
+                        skipWhitespace();
+                        skipValue();
+                        skipWhitespace();
+                    } while(consume(','));
+                }
+                expect(']');
+            }
+            default -> {
+                int start = m_position;
+                while(m_position < m_length && isLiteralChar(m_input.charAt(m_position))){
+                    m_position++;
+                }
+                if(m_position == start){
+                    throw error("Unexpected character '" + c + "'");
+                }
+            }
+        }
+    }
+
+    private boolean keyEquals(int start, int end, String key){
+        if(end - start != key.length()){
+            return false;
+        }
+        for(int i = 0; i < key.length(); i++){
+            if(m_input.charAt(start + i) != key.charAt(i)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int indexOf(char c, int start, int end){
+        for(int i = start; i < end; i++){
+            if(m_input.charAt(i) == c){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void skipWhitespace(){
+        m_position = whitespaceEnd(m_position);
+    }
+
+    /**
+     @return position of the first char at or after given one that isn't whitespace, input length if there is none
+     */
+    private int whitespaceEnd(int position){
+        while(position < m_length){
+            char c = m_input.charAt(position);
+            if(c != ' ' && c != '\t' && c != '\n' && c != '\r'){
+                return position;
+            }
+            position++;
+        }
+        return position;
+    }
+
+    private char peek() throws JSONParseException {
+        if(m_position >= m_length){
+            throw error("Unexpected end of input");
+        }
+        return m_input.charAt(m_position);
+    }
+
+    private boolean consume(char expected){
+        if(m_position < m_length && m_input.charAt(m_position) == expected){
+            m_position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char expected) throws JSONParseException {
+        if(m_position >= m_length){
+            throw error("Expected '" + expected + "' but input ended");
+        }
+        if(m_input.charAt(m_position) != expected){
+            throw error("Expected '" + expected + "' but found '" + m_input.charAt(m_position) + "'");
+        }
+        m_position++;
+    }
+
+    private static boolean isDigit(char c){
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLiteralChar(char c){
+        return isDigit(c) || (c >= 'a' && c <= 'z') || c == '-' || c == '+' || c == '.' || c == 'E';
+    }
+
+    /**
+     Creates exception for current position, line and column are counted only here
+     so successful parsing doesn't pay for tracking them
+     */
+    private JSONParseException error(String message){
+        int line = 1;
+        int lineStart = 0;
+        int end = Math.min(m_position, m_length);
+        for(int i = 0; i < end; i++){
+            if(m_input.charAt(i) == '\n'){
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        return new JSONParseException(message, line, end - lineStart + 1);
+    }
+}
@@ -0,0 +1,537 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ Default storage, keeps every task in tasks.json and rewrites the whole file on save.
+ Every save also writes TaskOffsetIndex of the file. Single task commands load through the index
+ (see setIndexedLoad) and patch changed task objects in place when they still fit, tasks added to the end
+ of indexed list are appended in place as well (import), see save.
+ Before patching, old bytes of every range about to be overwritten are written to tasks.json.undo, forced
+ and renamed into place; the file is deleted once the patch is forced. Crash in between leaves it, and the next
+ load or save puts the old bytes back first (see recover), so tasks.json is never left patched halfway.
+ Deleted tasks are filled with spaces, once they take more than half of tasks.json the whole file is
+ written again instead of patching it. Task patched shorter keeps spaces of its old size, they are only
+ reused by its next update
+ */
+@SuppressWarnings("try")
+public class JSONTaskStore implements TaskStore, TaskChangeListener {
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    private static final int UNDO_MAGIC = 0x54534B55; // "TSKU"
+    // ",\n" JSONWriter writes between task objects
+    private static final int SEPARATOR_LENGTH = 2;
+
+    private final Path m_path;
+    private boolean m_indexedLoad;
+    private IndexedTaskList m_indexed;
+    private final Map<Integer, JSONObject> m_updated = new HashMap<Integer, JSONObject>();
+
+    JSONTaskStore(Path path){
+        m_path = path;
+    }
+
+    public Path getPath() {
+        return m_path;
+    }
+
+    private Path undoPath(){
+        return m_path.resolveSibling(m_path.getFileName() + ".undo");
+    }
+
+    /**
+     Makes load return list that parses tasks only when they are accessed, for commands that touch few tasks
+     */
+    public void setIndexedLoad(boolean indexedLoad) {
+        m_indexedLoad = indexedLoad;
+    }
+
+    /**
+     Makes list of JSON objects from tasks.json file to work with,
+     see JSONParser class for details. With indexed load and fresh offset index the list is IndexedTaskList,
+     stale index is rebuilt while parsing the whole file
+     @return reference to list with either JSONObject class objects in or empty list
+     @throws JSONParseException with line and column if file contents are malformed
+     */
+    @Override
+    public List<JSONObject> load() throws IOException, JSONParseException {
+        m_indexed = null;
+        m_updated.clear();
+        recover();
+        // missing tasks.json is the same as empty one, it gets created by the first save
+        if(!Files.exists(m_path)){
+            return new ArrayList<JSONObject>();
+        }
+        if(!m_indexedLoad){
+            return parse(read());
+        }
+
+        TaskOffsetIndex index = TaskOffsetIndex.open(m_path);
+        if(index != null && Files.size(m_path) <= Integer.MAX_VALUE){
+            try(FileChannel channel = FileChannel.open(m_path, StandardOpenOption.READ)){
+                m_indexed = new IndexedTaskList(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), index);
+                return m_indexed;
+            }
+        }
+        String text = read();
+        JSONParser parser = new JSONParser(text);
+        parser.recordTaskRanges();
+        List<JSONObject> JSONObjects;
+        try(TaskStats.Phase phase = TaskStats.phase("parse")){
+            JSONObjects = parser.parse();
+        }
+        try(TaskStats.Phase phase = TaskStats.phase("offset-index")){
+            TaskOffsetIndex.Builder.fromCharRanges(text, JSONObjects, parser.getTaskRanges()).write(m_path);
+        } catch (IOException ignored){
+            // index only speeds up the next command, it is written again by the next save
+        }
+        return JSONObjects;
+    }
+
+    private String read() throws IOException {
+        try(TaskStats.Phase phase = TaskStats.phase("read")){
+            return Files.readString(m_path);
+        }
+    }
+
+    private static List<JSONObject> parse(String text) throws JSONParseException {
+        try(TaskStats.Phase phase = TaskStats.phase("parse")){
+            return new JSONParser(text).parse();
+        }
+    }
+
+    @Override
+    public TaskChangeListener changes() {
+        return this;
+    }
+
+    @Override
+    public void taskAdded(JSONObject task) {
+    }
+
+    @Override
+    public void taskUpdated(JSONObject task) {
+        if(m_indexed != null){
+            m_updated.put(task.getId(), task);
+        }
+    }
+
+    @Override
+    public void taskDeleted(int id) {
+        m_updated.remove(id);
+    }
+
+    /**
+     Patches tasks.json in place if the list was loaded through the index, every changed task object still fits
+     into its old place and tasks were either only added to the end or only removed,
+     otherwise rewrites tasks.json through temporary file, so process reading it never sees half-written file
+     */
+    @Override
+    public void save(List<JSONObject> JSONObjects) throws IOException {
+        if(JSONObjects != m_indexed || m_indexed.isMaterialized() || !patch()){
+            saveAllAtomically(JSONObjects);
+        } else if(!m_indexed.getAppended().isEmpty()){
+            // mapping and index of the list end before appended tasks, next save has to write the whole file
+            m_indexed = null;
+        }
+        m_updated.clear();
+    }
+
+    private boolean patch() throws IOException {
+        try(TaskStats.Phase phase = TaskStats.phase("patch")){
+            return patchInPlace();
+        }
+    }
+
+    /**
+     Overwrites changed task objects padded with spaces to their old length and fills removed task objects
+     with spaces together with the comma next to them, so the file stays valid JSON of the same size.
+     Added tasks are written over the end of the file after the last task object
+     @return false if some task doesn't fit or tasks were both added and removed, nothing is written then
+     */
+    private boolean patchInPlace() throws IOException {
+        TaskOffsetIndex index = m_indexed.getIndex();
+        List<JSONObject> appended = m_indexed.getAppended();
+        int[] removed = m_indexed.getRemovedEntries();
+        if(!appended.isEmpty() && (removed.length != 0 || index.size() == 0)){
+            return false;
+        }
+        List<Long> positions = new ArrayList<Long>();
+        List<byte[]> patches = new ArrayList<byte[]>();
+
+        for(JSONObject task: m_updated.values()){
+            int entry = index.find(task.getId());
+            if(entry < 0 && !appended.isEmpty() && task.getId() > index.idAt(index.size() - 1)){
+                // added and then changed, it is written with added tasks
+                continue;
+            }
+            if(entry < 0){
+                return false;
+            }
+            int length = index.lengthAt(entry);
+            byte[] bytes = taskBytes(task, false);
+            if(bytes.length > length){
+                // one-line form drops indentation, that leaves room for longer timestamp or description
+                bytes = taskBytes(task, true);
+                if(bytes.length > length){
+                    return false;
+                }
+            }
+            byte[] patch = new byte[length];
+            // JSON allows whitespace before closing brace
+            System.arraycopy(bytes, 0, patch, 0, bytes.length - 1);
+            Arrays.fill(patch, bytes.length - 1, length - 1, (byte) ' ');
+            patch[length - 1] = '}';
+            positions.add(index.offsetAt(entry));
+            patches.add(patch);
+        }
+
+        int lastKept = index.size() - 1;
+        for(int r = removed.length - 1; r >= 0 && removed[r] == lastKept; r--){
+            lastKept--;
+        }
+        long blankLength = index.getBlankLength();
+        for(int entry: removed){
+            // the object and one separator become blank whichever side of it they are cut from
+            blankLength += index.lengthAt(entry) + SEPARATOR_LENGTH;
+        }
+        if(lastKept < 0 && removed.length != 0){
+            blankLength -= SEPARATOR_LENGTH;
+        }
+        if(blankLength > Files.size(m_path) / 2){
+            return false;
+        }
+        for(int entry: removed){
+            long start;
+            long end;
+            if(entry < lastKept){
+                // object and the comma after it up to the next object
+                start = index.offsetAt(entry);
+                end = index.offsetAt(entry + 1);
+            } else {
+                // nothing is kept after it, so the comma before it goes
+                start = entry == 0 ? index.offsetAt(0) : index.offsetAt(entry - 1) + index.lengthAt(entry - 1);
+                end = index.offsetAt(entry) + index.lengthAt(entry);
+            }
+            byte[] blank = new byte[(int) (end - start)];
+            Arrays.fill(blank, (byte) ' ');
+            positions.add(start);
+            patches.add(blank);
+        }
+
+        TaskOffsetIndex.Builder appendedOffsets = null;
+        try(FileChannel channel = FileChannel.open(m_path, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            long appendStart = -1;
+            if(!appended.isEmpty()){
+                int last = index.size() - 1;
+                appendStart = index.offsetAt(last) + index.lengthAt(last);
+            }
+            try(TaskStats.Phase phase = TaskStats.phase("undo")){
+                writeUndo(channel, positions, patches, appendStart);
+            }
+            for(int i = 0; i < patches.size(); i++){
+                ByteBuffer patch = ByteBuffer.wrap(patches.get(i));
+                long position = positions.get(i);
+                while(patch.hasRemaining()){
+                    channel.write(patch, position + patch.position());
+                }
+            }
+            if(!appended.isEmpty()){
+                appendedOffsets = append(channel, index, appended);
+            }
+            channel.force(false);
+        }
+        if(appendedOffsets != null){
+            appendedOffsets.append(m_path);
+        } else if(removed.length != 0){
+            TaskOffsetIndex.Builder kept = index.without(removed);
+            kept.setBlankLength(blankLength);
+            kept.write(m_path);
+        } else {
+            TaskOffsetIndex.stamp(m_path);
+        }
+        Files.delete(undoPath());
+        return true;
+    }
+
+    /**
+     Writes size of tasks.json and old bytes of every range that is about to be patched to tasks.json.undo
+     through temporary file, the file is forced before it is renamed, so it is complete once it exists
+     @param appendStart offset added tasks are written from, the rest of the file is saved as well, -1 if none
+     */
+    private void writeUndo(FileChannel channel, List<Long> positions, List<byte[]> patches, long appendStart)
+            throws IOException {
+        Path undoPath = undoPath();
+        Path temporaryPath = undoPath.resolveSibling(undoPath.getFileName() + ".tmp");
+        long size = channel.size();
+        try(FileChannel undo = FileChannel.open(temporaryPath,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)){
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(undo), WRITE_BUFFER_SIZE));
+            output.writeInt(UNDO_MAGIC);
+            output.writeLong(size);
+            output.writeInt(patches.size() + (appendStart >= 0 ? 1 : 0));
+            for(int i = 0; i < patches.size(); i++){
+                writeUndoRange(output, channel, positions.get(i), patches.get(i).length);
+            }
+            if(appendStart >= 0){
+                writeUndoRange(output, channel, appendStart, (int) (size - appendStart));
+            }
+            output.flush();
+            undo.force(false);
+        }
+        Files.move(temporaryPath, undoPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeUndoRange(DataOutputStream output, FileChannel channel, long position, int length)
+            throws IOException {
+        ByteBuffer old = ByteBuffer.allocate(length);
+        while(old.hasRemaining()){
+            if(channel.read(old, position + old.position()) < 0){
+                throw new IOException("tasks.json ends before byte " + (position + old.position()));
+            }
+        }
+        output.writeLong(position);
+        output.writeInt(length);
+        output.write(old.array());
+    }
+
+    /**
+     Puts back old bytes tasks.json.undo keeps if patch was interrupted. Fixed file is written through
+     temporary file and renamed over tasks.json like saveAllAtomically, so readers that recover at the same time
+     under shared lock only write the same file again. Offset index is deleted, it may describe the patched file
+     */
+    private void recover() throws IOException {
+        Path undoPath = undoPath();
+        if(!Files.exists(undoPath)){
+            return;
+        }
+        if(!Files.exists(m_path)){
+            Files.deleteIfExists(undoPath);
+            return;
+        }
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(undoPath), WRITE_BUFFER_SIZE))){
+            if(input.readInt() != UNDO_MAGIC){
+                throw new IOException(undoPath + " isn't undo file of " + m_path.getFileName());
+            }
+            // appending only makes the file longer, so every saved range is inside of it
+            byte[] json = Arrays.copyOf(Files.readAllBytes(m_path), (int) input.readLong());
+            int count = input.readInt();
+            for(int i = 0; i < count; i++){
+                long position = input.readLong();
+                input.readFully(json, (int) position, input.readInt());
+            }
+            Path temporaryPath = Files.createTempFile(m_path.toAbsolutePath().getParent(), m_path.getFileName().toString(), ".tmp");
+            try(FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.WRITE)){
+                ByteBuffer buffer = ByteBuffer.wrap(json);
+                while(buffer.hasRemaining()){
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(temporaryPath, m_path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException ignored){
+            // another reader recovered the file and deleted the undo file first
+            return;
+        }
+        Files.deleteIfExists(TaskOffsetIndex.pathFor(m_path));
+        Files.deleteIfExists(undoPath);
+    }
+
+    /**
+     Writes added tasks after the last task object of the file followed by the end of tasks.json
+     @return offsets of written task objects
+     */
+    private static TaskOffsetIndex.Builder append(FileChannel channel, TaskOffsetIndex index, List<JSONObject> appended)
+            throws IOException {
+        int last = index.size() - 1;
+        long end = index.offsetAt(last) + index.lengthAt(last);
+        channel.position(end);
+        Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        Utf8CountingWriter counter = new Utf8CountingWriter(out);
+        JSONWriter writer = new JSONWriter(counter);
+        TaskOffsetIndex.Builder offsets = new TaskOffsetIndex.Builder(appended.size());
+        for(JSONObject task: appended){
+            writer.writeTaskSeparator();
+            long start = end + counter.getByteCount();
+            writer.writeTask(task);
+            offsets.add(task.getId(), start, (int) (end + counter.getByteCount() - start));
+        }
+        writer.writeJSONEnd();
+        out.flush();
+        channel.truncate(end + counter.getByteCount());
+        return offsets;
+    }
+
+    private static byte[] taskBytes(JSONObject task, boolean compact) throws IOException {
+        StringWriter taskWriter = new StringWriter();
+        if(compact){
+            new JSONWriter(taskWriter).writeCompactTask(task);
+        } else {
+            new JSONWriter(taskWriter).writeTask(task);
+        }
+        return taskWriter.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     Saves list of given JSONObject objects by writing them to a file in JSON format
+     @param JSONObjects list to get objects to write
+     */
+    @Override
+    public void saveAll(List<JSONObject> JSONObjects) throws IOException {
+        // undo file left by interrupted patch must not be applied to the file written now
+        recover();
+        TaskOffsetIndex.Builder offsets;
+        try(FileChannel channel = FileChannel.open(m_path,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE)){
+            offsets = writeTasks(writer, JSONObjects);
+        }
+        offsets.write(m_path);
+    }
+
+    /**
+     Writes list to temporary file next to tasks.json and renames it over tasks.json,
+     so readers see either old or new file but never half-written one
+     @param JSONObjects list to get objects to write
+     */
+    public void saveAllAtomically(List<JSONObject> JSONObjects) throws IOException {
+        recover();
+        Path temporaryPath = m_path.resolveSibling(m_path.getFileName() + ".tmp");
+        TaskOffsetIndex.Builder offsets;
+        FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        try{
+            Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+            try(TaskStats.Phase phase = TaskStats.phase("write")){
+                offsets = writeTasks(writer, JSONObjects);
+                writer.flush();
+            }
+            try(TaskStats.Phase phase = TaskStats.phase("sync")){
+                channel.force(false);
+            }
+        } finally {
+            try(TaskStats.Phase phase = TaskStats.phase("close")){
+                channel.close();
+            }
+        }
+        try(TaskStats.Phase phase = TaskStats.phase("rename")){
+            Files.move(temporaryPath, m_path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        try(TaskStats.Phase phase = TaskStats.phase("offset-index")){
+            offsets.write(m_path);
+        }
+    }
+
+    /**
+     Writes tasks in tasks.json format counting UTF-8 bytes on the way
+     @return offsets of every written task object
+     */
+    private static TaskOffsetIndex.Builder writeTasks(Writer out, List<JSONObject> JSONObjects) throws IOException {
+        Utf8CountingWriter counter = new Utf8CountingWriter(out);
+        JSONWriter writer = new JSONWriter(counter);
+        int size = JSONObjects.size();
+        TaskOffsetIndex.Builder offsets = new TaskOffsetIndex.Builder(size);
+        writer.writeJSONStart();
+        for(int i = 0; i < size; i++){
+            if(i != 0){
+                writer.writeTaskSeparator();
+            }
+            JSONObject task = JSONObjects.get(i);
+            long start = counter.getByteCount();
+            writer.writeTask(task);
+            offsets.add(task.getId(), start, (int) (counter.getByteCount() - start));
+        }
+        writer.writeJSONEnd();
+        return offsets;
+    }
+
+    /**
+     Passes chars through and counts how many bytes they take in UTF-8,
+     the same way the encoder writes them (unpaired surrogate becomes '?')
+     */
+    private static class Utf8CountingWriter extends Writer {
+        private final Writer m_out;
+        private long m_byteCount;
+        private boolean m_highSurrogate;
+
+        Utf8CountingWriter(Writer out){
+            m_out = out;
+        }
+
+        long getByteCount(){
+            return m_byteCount;
+        }
+
+        private void count(char c){
+            if(m_highSurrogate){
+                m_highSurrogate = false;
+                if(Character.isLowSurrogate(c)){
+                    m_byteCount += 4;
+                    return;
+                }
+                m_byteCount++;
+            }
+            if(c < 0x80){
+                m_byteCount++;
+            } else if(c < 0x800){
+                m_byteCount += 2;
+            } else if(Character.isHighSurrogate(c)){
+                m_highSurrogate = true;
+            } else if(Character.isLowSurrogate(c)){
+                m_byteCount++;
+            } else {
+                m_byteCount += 3;
+            }
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            count((char) c);
+            m_out.write(c);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            for(int i = offset; i < offset + length; i++){
+                count(buffer[i]);
+            }
+            m_out.write(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            for(int i = offset; i < offset + length; i++){
+                count(text.charAt(i));
+            }
+            m_out.write(text, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            m_out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            m_out.close();
+        }
+    }
+}
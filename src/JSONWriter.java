@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ Streaming serializer that writes JSONObject objects in tasks.json format in one pass over the list.
+ Dates and numbers are formatted into reusable char buffer instead of going through format strings
+ */
+public class JSONWriter {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer m_writer;
+    private final char[] m_buffer = new char[32];
+
+    JSONWriter(Writer writer){
+        m_writer = writer;
+    }
+
+    /**
+     Writes JSON object with "tasks" as array of JSON objects
+     @param JSONObjects list to get objects to write
+     */
+    public void writeJSON(List<JSONObject> JSONObjects) throws IOException {
+        writeJSONStart();
+        writeJSONBody(JSONObjects);
+        writeJSONEnd();
+    }
+
+    /**
+     Writes everything that goes before the first task, for callers that write tasks one by one
+     */
+    public void writeJSONStart() throws IOException {
+        m_writer.write("{\n\t\"tasks\": [\n");
+    }
+
+    /**
+     Writes separator that goes between two tasks
+     */
+    public void writeTaskSeparator() throws IOException {
+        m_writer.write(",\n");
+    }
+
+    /**
+     Writes everything that goes after the last task
+     */
+    public void writeJSONEnd() throws IOException {
+        m_writer.write("\n\t]\n}");
+    }
+
+    /**
+     Writes JSON objects separated by commas for each JSONObject object in JSONObjects list
+     @param JSONObjects list to get objects to write
+     */
+    public void writeJSONBody(List<JSONObject> JSONObjects) throws IOException {
+        boolean first = true;
+        for(JSONObject task: JSONObjects){
+            if(!first){
+                writeTaskSeparator();
+            }
+            writeTask(task);
+            first = false;
+        }
+    }
+
+    /**
+     Writes single task object with the same layout and field order as tasks.json always had.
+     id and status are numbers without quotes, quoted id marks task object with description written
+     without escaping by the first releases (see JSONParser)
+     @param task object to write
+     */
+    public void writeTask(JSONObject task) throws IOException {
+        m_writer.write("\t\t{\n\t\t\t\"id\": ");
+        writeInt(task.getId());
+        m_writer.write(",\n\t\t\t\"description\": ");
+        writeString(task.getDescription());
+        m_writer.write(",\n\t\t\t\"status\": ");
+        writeInt(task.getStatus().ordinal());
+        m_writer.write(",\n\t\t\t\"createdAt\": \"");
+        writeDateTime(task.getCreatedAt());
+        m_writer.write("\",\n\t\t\t\"updatedAt\": \"");
+        writeDateTime(task.getUpdatedAt());
+        m_writer.write("\"\n\t\t}");
+    }
+
+    /**
+     Writes single task object on one line without whitespace, used for journal records
+     @param task object to write
+     */
+    public void writeCompactTask(JSONObject task) throws IOException {
+        m_writer.write("{\"id\":");
+        writeInt(task.getId());
+        m_writer.write(",\"description\":");
+        writeString(task.getDescription());
+        m_writer.write(",\"status\":");
+        writeInt(task.getStatus().ordinal());
+        m_writer.write(",\"createdAt\":\"");
+        writeDateTime(task.getCreatedAt());
+        m_writer.write("\",\"updatedAt\":\"");
+        writeDateTime(task.getUpdatedAt());
+        m_writer.write("\"}");
+    }
+
+    /**
+     Writes quoted JSON string, escaping quotes, backslashes and control characters
+     */
+    public void writeString(String value) throws IOException {
+        m_writer.write('"');
+        int runStart = 0;
+        int length = value.length();
+        for(int i = 0; i < length; i++){
+            char c = value.charAt(i);
+            if(c != '"' && c != '\\' && c >= 0x20){
+                continue;
+            }
+            m_writer.write(value, runStart, i - runStart);
+            runStart = i + 1;
+            switch(c){
+                case '"' -> m_writer.write("\\\"");
+                case '\\' -> m_writer.write("\\\\");
+                case '\n' -> m_writer.write("\\n");
+                case '\r' -> m_writer.write("\\r");
+                case '\t' -> m_writer.write("\\t");
+                case '\b' -> m_writer.write("\\b");
+                case '\f' -> m_writer.write("\\f");
+                default -> {
+                    m_buffer[0] = '\\';
+                    m_buffer[1] = 'u';
+                    m_buffer[2] = '0';
+                    m_buffer[3] = '0';
+                    m_buffer[4] = HEX[c >> 4];
+                    m_buffer[5] = HEX[c & 0xF];
+                    m_writer.write(m_buffer, 0, 6);
+                }
+            }
+        }
+        m_writer.write(value, runStart, length - runStart);
+        m_writer.write('"');
+    }
+
+    public void writeInt(int value) throws IOException {
+        if(value == Integer.MIN_VALUE){
+            m_writer.write("-2147483648");
+            return;
+        }
+        int position = m_buffer.length;
+        boolean negative = value < 0;
+        if(negative){
+            value = -value;
+        }
+        do {
+            m_buffer[--position] = (char) ('0' + value % 10);
+            value /= 10;
+        } while(value != 0);
+        if(negative){
+            m_buffer[--position] = '-';
+        }
+        m_writer.write(m_buffer, position, m_buffer.length - position);
+    }
+
+    /**
+     Writes date-time as yyyy-MM-ddTHH:mm:ss with fraction of second cut to 3, 6 or 9 digits
+     the same way LocalDateTime.toString does
+     */
+    public void writeDateTime(LocalDateTime dateTime) throws IOException {
+        int year = dateTime.getYear();
+        if(year < 0 || year > 9999){
+            m_writer.write(dateTime.toString());
+            return;
+        }
+        char[] buffer = m_buffer;
+        putDigits(buffer, 0, year, 4);
+        buffer[4] = '-';
+        putDigits(buffer, 5, dateTime.getMonthValue(), 2);
+        buffer[7] = '-';
+        putDigits(buffer, 8, dateTime.getDayOfMonth(), 2);
+        buffer[10] = 'T';
+        putDigits(buffer, 11, dateTime.getHour(), 2);
+        buffer[13] = ':';
+        putDigits(buffer, 14, dateTime.getMinute(), 2);
+        buffer[16] = ':';
+        putDigits(buffer, 17, dateTime.getSecond(), 2);
+        int length = 19;
+
+        int nano = dateTime.getNano();
+        if(nano != 0){
+            buffer[length++] = '.';
+            if(nano % 1000_000 == 0){
+                putDigits(buffer, length, nano / 1000_000, 3);
+                length += 3;
+            } else if(nano % 1000 == 0){
+                putDigits(buffer, length, nano / 1000, 6);
+                length += 6;
+            } else {
+                putDigits(buffer, length, nano, 9);
+                length += 9;
+            }
+        }
+        m_writer.write(buffer, 0, length);
+    }
+
+    private static void putDigits(char[] buffer, int offset, int value, int count){
+        for(int i = offset + count - 1; i >= offset; i--){
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
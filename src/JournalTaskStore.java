@@ -0,0 +1,72 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ Storage that keeps tasks.json as snapshot and appends changes to tasks.journal,
+ see TaskJournal class for record format
+ */
+public class JournalTaskStore implements TaskStore {
+    private final JSONTaskStore m_snapshot;
+    private final TaskJournal m_journal;
+    private Thread m_compaction;
+
+    JournalTaskStore(JSONTaskStore snapshot, TaskJournal journal){
+        m_snapshot = snapshot;
+        m_journal = journal;
+    }
+
+    /**
+     Loads tasks.json snapshot and replays the journal on top of it
+     */
+    @Override
+    public List<JSONObject> load() throws IOException, JSONParseException {
+        List<JSONObject> JSONObjects = m_snapshot.load();
+        m_journal.replay(JSONObjects);
+        return JSONObjects;
+    }
+
+    @Override
+    public TaskChangeListener changes() {
+        return m_journal;
+    }
+
+    /**
+     Appends changes made by the command to tasks.journal instead of rewriting tasks.json,
+     compacts journal into new tasks.json in background once it grows past the threshold.
+     Compaction works on a copy of the list, next save waits for it so no record
+     gets appended to the journal that compaction is about to remove
+     */
+    @Override
+    public void save(List<JSONObject> JSONObjects) throws IOException {
+        awaitCompaction();
+        m_journal.flush();
+        if(m_journal.needsCompaction()){
+            m_compaction = m_journal.compactInBackground(new ArrayList<JSONObject>(JSONObjects), m_snapshot);
+        }
+    }
+
+    @Override
+    public void saveAll(List<JSONObject> JSONObjects) throws IOException {
+        awaitCompaction();
+        m_journal.compact(JSONObjects, m_snapshot);
+    }
+
+    @Override
+    public void awaitBackgroundSave() throws IOException {
+        awaitCompaction();
+    }
+
+    private void awaitCompaction() throws IOException {
+        if(m_compaction == null){
+            return;
+        }
+        try{
+            m_compaction.join();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for journal compaction");
+        }
+        m_compaction = null;
+    }
+}
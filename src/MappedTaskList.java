@@ -0,0 +1,183 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ List view over memory-mapped records of BinaryTaskStore.
+ JSONObject objects are created only for records that get accessed, ids can be read
+ straight from the mapped record without creating any object (see idAt).
+ Adding to the end keeps the view, any other structural change copies
+ every record into ordinary list first
+ */
+public class MappedTaskList extends AbstractList<JSONObject> implements RandomAccess {
+    private final ByteBuffer m_records;
+    private final ByteBuffer m_heap;
+    private final int m_mappedCount;
+    private final Map<Integer, JSONObject> m_loaded = new HashMap<Integer, JSONObject>();
+    private final List<JSONObject> m_appended = new ArrayList<JSONObject>();
+    private List<JSONObject> m_materialized;
+
+    /**
+     @param records mapped records, record i starts at i * BinaryTaskStore.RECORD_SIZE
+     @param heap mapped description heap
+     @param mappedCount number of records
+     */
+    MappedTaskList(ByteBuffer records, ByteBuffer heap, int mappedCount){
+        m_records = records;
+        m_heap = heap;
+        m_mappedCount = mappedCount;
+    }
+
+    @Override
+    public JSONObject get(int index) {
+        if(m_materialized != null){
+            return m_materialized.get(index);
+        }
+        if(index < 0 || index >= size()){
+            throw new IndexOutOfBoundsException(index);
+        }
+        if(index >= m_mappedCount){
+            return m_appended.get(index - m_mappedCount);
+        }
+        JSONObject task = m_loaded.get(index);
+        if(task == null){
+            task = readRecord(index);
+            m_loaded.put(index, task);
+        }
+        return task;
+    }
+
+    @Override
+    public int size() {
+        if(m_materialized != null){
+            return m_materialized.size();
+        }
+        return m_mappedCount + m_appended.size();
+    }
+
+    @Override
+    public void add(int index, JSONObject task) {
+        if(m_materialized == null && index == size()){
+            m_appended.add(task);
+        } else {
+            materialize().add(index, task);
+        }
+        modCount++;
+    }
+
+    @Override
+    public JSONObject set(int index, JSONObject task) {
+        return materialize().set(index, task);
+    }
+
+    @Override
+    public JSONObject remove(int index) {
+        modCount++;
+        return materialize().remove(index);
+    }
+
+    /**
+     Reads task at index without keeping it in the list, for passing over every task once (export, rewrite)
+     */
+    public JSONObject readAt(int index){
+        if(m_materialized != null || index >= m_mappedCount){
+            return get(index);
+        }
+        JSONObject task = m_loaded.get(index);
+        return task != null ? task : readRecord(index);
+    }
+
+    /**
+     Reads id of the task at index without creating JSONObject for it
+     */
+    public int idAt(int index){
+        if(m_materialized != null || index >= m_mappedCount){
+            return get(index).getId();
+        }
+        return m_records.getInt(index * BinaryTaskStore.RECORD_SIZE);
+    }
+
+    /**
+     Reads status code of mapped record, index must be less than getMappedCount()
+     */
+    public byte statusAt(int index){
+        return m_records.get(index * BinaryTaskStore.RECORD_SIZE + BinaryTaskStore.STATUS);
+    }
+
+    public long createdAtMilli(int index){
+        return m_records.getLong(index * BinaryTaskStore.RECORD_SIZE + BinaryTaskStore.CREATED_AT);
+    }
+
+    public long updatedAtMilli(int index){
+        return m_records.getLong(index * BinaryTaskStore.RECORD_SIZE + BinaryTaskStore.UPDATED_AT);
+    }
+
+    /**
+     @return true if list was changed in other way than adding to the end,
+     so mapped records no longer match list indexes
+     */
+    public boolean isMaterialized(){
+        return m_materialized != null;
+    }
+
+    public int getMappedCount(){
+        return m_mappedCount;
+    }
+
+    /**
+     @return tasks added to the end of the list since it was mapped
+     */
+    public List<JSONObject> getAppended(){
+        return m_appended;
+    }
+
+    /**
+     Reads description of mapped record straight from the heap
+     */
+    public String descriptionAt(int index){
+        int recordStart = index * BinaryTaskStore.RECORD_SIZE;
+        long offset = m_records.getLong(recordStart + BinaryTaskStore.DESCRIPTION_OFFSET);
+        int length = m_records.getInt(recordStart + BinaryTaskStore.DESCRIPTION_LENGTH);
+        byte[] bytes = new byte[length];
+        m_heap.get((int) offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private JSONObject readRecord(int index){
+        int recordStart = index * BinaryTaskStore.RECORD_SIZE;
+        int id = m_records.getInt(recordStart);
+        TaskStatus status = TaskStatus.values()[m_records.get(recordStart + BinaryTaskStore.STATUS)];
+        LocalDateTime createdAt = fromEpochMilli(m_records.getLong(recordStart + BinaryTaskStore.CREATED_AT));
+        LocalDateTime updatedAt = fromEpochMilli(m_records.getLong(recordStart + BinaryTaskStore.UPDATED_AT));
+        return new JSONObject(id, descriptionAt(index), status, createdAt, updatedAt);
+    }
+
+    private List<JSONObject> materialize(){
+        if(m_materialized == null){
+            List<JSONObject> JSONObjects = new ArrayList<JSONObject>(size() + 1);
+            for(int i = 0; i < m_mappedCount; i++){
+                JSONObjects.add(get(i));
+            }
+            JSONObjects.addAll(m_appended);
+            m_materialized = JSONObjects;
+            m_loaded.clear();
+        }
+        return m_materialized;
+    }
+
+    static LocalDateTime fromEpochMilli(long epochMilli){
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMilli, 1000),
+                Math.floorMod(epochMilli, 1000) * 1000_000, ZoneOffset.UTC);
+    }
+
+    static long toEpochMilli(LocalDateTime dateTime){
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
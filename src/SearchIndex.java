@@ -0,0 +1,441 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ Inverted index of task descriptions: every token (lowercase run of letters and digits)
+ maps to sorted array of ids of tasks whose description contains it.
+ Index is kept in tasks.search next to tasks.json and updated through TaskChangeListener
+ by add, update and delete, so searching never reads descriptions.
+ File keeps task count and sum of ids it was built for, index with other values is rebuilt.
+ Update keeps both of them, so commands delete the file before saving changed descriptions
+ and a file that failed to be saved after them can't be trusted (TaskIndexes.deleteStaleSearch)
+ */
+public class SearchIndex implements TaskChangeListener {
+    private static final int MAGIC = 0x54534B53; // "TSKS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_TOKEN_LENGTH = 255;
+    static final Path PATH = Path.of("./tasks.search");
+
+    private final TreeMap<String, Postings> m_postings = new TreeMap<String, Postings>();
+    private Map<Integer, String[]> m_tokensById;
+    private int m_taskCount;
+    private long m_idSum;
+    private boolean m_modified;
+
+    /**
+     Sorted growable array of ids
+     */
+    private static class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id){
+            int index = size == 0 || ids[size - 1] < id ? -size - 1 : Arrays.binarySearch(ids, 0, size, id);
+            if(index >= 0){
+                return;
+            }
+            index = -index - 1;
+            if(size == ids.length){
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+
+        void remove(int id){
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if(index < 0){
+                return;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+        }
+
+        /**
+         Removes every id found in sorted array in one pass
+         */
+        void removeAll(int[] sortedIds){
+            int write = 0;
+            for(int read = 0; read < size; read++){
+                if(Arrays.binarySearch(sortedIds, ids[read]) < 0){
+                    ids[write++] = ids[read];
+                }
+            }
+            size = write;
+        }
+
+        int[] toArray(){
+            return Arrays.copyOf(ids, size);
+        }
+    }
+
+    /**
+     Builds index by reading every description of the list
+     */
+    public static SearchIndex build(List<JSONObject> JSONObjects){
+        SearchIndex index = new SearchIndex();
+        for(JSONObject task: JSONObjects){
+            index.addTokens(task.getId(), task.getDescription());
+            index.m_taskCount++;
+            index.m_idSum += task.getId();
+        }
+        index.m_modified = true;
+        return index;
+    }
+
+    /**
+     Loads index from file if it exists and was built for the same tasks, otherwise builds it from the list
+     @param path path to tasks.search
+     @param JSONObjects current task list
+     @param rebuild true to ignore saved index
+     */
+    public static SearchIndex load(Path path, List<JSONObject> JSONObjects, boolean rebuild) throws IOException {
+        if(!rebuild && Files.exists(path)){
+            SearchIndex index = read(path);
+            if(index != null && index.m_taskCount == JSONObjects.size() && index.m_idSum == idSum(JSONObjects)){
+                return index;
+            }
+        }
+        return build(JSONObjects);
+    }
+
+    private static long idSum(List<JSONObject> JSONObjects){
+        long sum = 0;
+        int size = JSONObjects.size();
+        for(int i = 0; i < size; i++){
+            sum += TaskTracker.idAt(JSONObjects, i);
+        }
+        return sum;
+    }
+
+    /**
+     Finds tasks matching the query. Words are joined with AND, word OR word joins
+     groups of words with OR, word ending with * matches every token starting with it.
+     Matching is case insensitive
+     @param query words of the query
+     @return sorted ids of matching tasks
+     */
+    public int[] search(List<String> query){
+        int[] result = new int[0];
+        List<String> group = new ArrayList<String>();
+        for(String word: query){
+            if(word.equals("OR")){
+                result = union(result, searchAll(group));
+                group.clear();
+            } else {
+                group.add(word);
+            }
+        }
+        return union(result, searchAll(group));
+    }
+
+    /**
+     @return ids of tasks that match every word of the group
+     */
+    private int[] searchAll(List<String> words){
+        int[] result = null;
+        for(String word: words){
+            boolean prefix = word.endsWith("*");
+            String[] tokens = tokenize(prefix ? word.substring(0, word.length() - 1) : word);
+            for(int i = 0; i < tokens.length; i++){
+                // only the last token of the word can be a prefix: "e-mail*" is "e" AND "mail*"
+                int[] matches = prefix && i == tokens.length - 1 ? prefixIds(tokens[i]) : exactIds(tokens[i]);
+                result = result == null ? matches : intersect(result, matches);
+                if(result.length == 0){
+                    return result;
+                }
+            }
+        }
+        return result == null ? new int[0] : result;
+    }
+
+    private int[] exactIds(String token){
+        Postings postings = m_postings.get(token);
+        return postings == null ? new int[0] : postings.toArray();
+    }
+
+    private int[] prefixIds(String prefix){
+        NavigableMap<String, Postings> matching = m_postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        int total = 0;
+        for(Postings postings: matching.values()){
+            total += postings.size;
+        }
+        int[] ids = new int[total];
+        int size = 0;
+        for(Postings postings: matching.values()){
+            System.arraycopy(postings.ids, 0, ids, size, postings.size);
+            size += postings.size;
+        }
+        Arrays.sort(ids);
+        int unique = 0;
+        for(int i = 0; i < size; i++){
+            if(unique == 0 || ids[unique - 1] != ids[i]){
+                ids[unique++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, unique);
+    }
+
+    static int[] intersect(int[] first, int[] second){
+        int[] result = new int[Math.min(first.length, second.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while(i < first.length && j < second.length){
+            if(first[i] == second[j]){
+                result[size++] = first[i];
+                i++;
+                j++;
+            } else if(first[i] < second[j]){
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    static int[] union(int[] first, int[] second){
+        if(first.length == 0){
+            return second;
+        }
+        if(second.length == 0){
+            return first;
+        }
+        int[] result = new int[first.length + second.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while(i < first.length || j < second.length){
+            if(j == second.length || (i < first.length && first[i] < second[j])){
+                result[size++] = first[i++];
+            } else if(i == first.length || second[j] < first[i]){
+                result[size++] = second[j++];
+            } else {
+                result[size++] = first[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     Splits text into lowercase tokens made of letters and digits,
+     tokens longer than MAX_TOKEN_LENGTH are cut
+     */
+    static String[] tokenize(String text){
+        List<String> tokens = new ArrayList<String>();
+        int length = text.length();
+        int start = -1;
+        for(int i = 0; i <= length; i++){
+            boolean tokenChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if(tokenChar && start == -1){
+                start = i;
+            } else if(!tokenChar && start != -1){
+                tokens.add(text.substring(start, Math.min(i, start + MAX_TOKEN_LENGTH)).toLowerCase());
+                start = -1;
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    private void addTokens(int id, String description){
+        String[] tokens = tokenize(description);
+        for(String token: tokens){
+            m_postings.computeIfAbsent(token, ignored -> new Postings()).add(id);
+        }
+        if(m_tokensById != null){
+            m_tokensById.put(id, tokens);
+        }
+    }
+
+    private void removeTokens(int id){
+        String[] tokens = tokensById().remove(id);
+        if(tokens == null){
+            return;
+        }
+        for(String token: tokens){
+            Postings postings = m_postings.get(token);
+            if(postings != null){
+                postings.remove(id);
+                if(postings.size == 0){
+                    m_postings.remove(token);
+                }
+            }
+        }
+    }
+
+    /**
+     Tokens of every task, built from postings only when a task gets updated or deleted
+     */
+    private Map<Integer, String[]> tokensById(){
+        if(m_tokensById == null){
+            Map<Integer, List<String>> tokens = new HashMap<Integer, List<String>>();
+            for(Map.Entry<String, Postings> entry: m_postings.entrySet()){
+                Postings postings = entry.getValue();
+                for(int i = 0; i < postings.size; i++){
+                    tokens.computeIfAbsent(postings.ids[i], ignored -> new ArrayList<String>()).add(entry.getKey());
+                }
+            }
+            m_tokensById = new HashMap<Integer, String[]>(tokens.size() * 2);
+            for(Map.Entry<Integer, List<String>> entry: tokens.entrySet()){
+                m_tokensById.put(entry.getKey(), entry.getValue().toArray(new String[0]));
+            }
+        }
+        return m_tokensById;
+    }
+
+    @Override
+    public void taskAdded(JSONObject task) {
+        addTokens(task.getId(), task.getDescription());
+        m_taskCount++;
+        m_idSum += task.getId();
+        m_modified = true;
+    }
+
+    @Override
+    public void taskUpdated(JSONObject task) {
+        String[] oldTokens = tokensById().get(task.getId());
+        String[] newTokens = tokenize(task.getDescription());
+        if(oldTokens != null && Arrays.equals(oldTokens, newTokens)){
+            return;
+        }
+        removeTokens(task.getId());
+        addTokens(task.getId(), task.getDescription());
+        m_modified = true;
+    }
+
+    @Override
+    public void taskDeleted(int id) {
+        removeTokens(id);
+        m_taskCount--;
+        m_idSum -= id;
+        m_modified = true;
+    }
+
+    /**
+     Compacts postings of every token of removed tasks once instead of shifting them for each task
+     */
+    @Override
+    public void tasksDeleted(int[] ids) {
+        Set<String> tokens = new HashSet<String>();
+        Map<Integer, String[]> tokensById = tokensById();
+        for(int id: ids){
+            String[] taskTokens = tokensById.remove(id);
+            if(taskTokens != null){
+                tokens.addAll(Arrays.asList(taskTokens));
+            }
+            m_taskCount--;
+            m_idSum -= id;
+        }
+        for(String token: tokens){
+            Postings postings = m_postings.get(token);
+            if(postings != null){
+                postings.removeAll(ids);
+                if(postings.size == 0){
+                    m_postings.remove(token);
+                }
+            }
+        }
+        m_modified = true;
+    }
+
+    /**
+     @return true if index was built or changed since it was loaded
+     */
+    public boolean isModified(){
+        return m_modified;
+    }
+
+    /**
+     Writes index to temporary file and renames it over the given path.
+     Postings are written as differences between neighbouring ids in variable length encoding
+     */
+    public void save(Path path) throws IOException {
+        // several processes may save the index at once after searching, each one writes its own file
+        Path temporaryPath = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath), 1 << 16))){
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(m_taskCount);
+            output.writeLong(m_idSum);
+            output.writeInt(m_postings.size());
+            for(Map.Entry<String, Postings> entry: m_postings.entrySet()){
+                output.writeUTF(entry.getKey());
+                Postings postings = entry.getValue();
+                writeVarInt(output, postings.size);
+                int previous = 0;
+                for(int i = 0; i < postings.size; i++){
+                    writeVarInt(output, postings.ids[i] - previous);
+                    previous = postings.ids[i];
+                }
+            }
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        m_modified = false;
+    }
+
+    /**
+     @return index read from file or null if file isn't a search index of current version
+     */
+    private static SearchIndex read(Path path) throws IOException {
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))){
+            if(input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION){
+                return null;
+            }
+            SearchIndex index = new SearchIndex();
+            index.m_taskCount = input.readInt();
+            index.m_idSum = input.readLong();
+            int termCount = input.readInt();
+            for(int t = 0; t < termCount; t++){
+                String token = input.readUTF();
+                Postings postings = new Postings();
+                postings.size = readVarInt(input);
+                postings.ids = new int[Math.max(postings.size, 4)];
+                int previous = 0;
+                for(int i = 0; i < postings.size; i++){
+                    previous += readVarInt(input);
+                    postings.ids[i] = previous;
+                }
+                index.m_postings.put(token, postings);
+            }
+            return index;
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream output, int value) throws IOException {
+        while((value & ~0x7F) != 0){
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream input) throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = input.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,294 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ Storage that splits tasks into segment files by id range inside tasks.shards directory.
+ Segment n holds tasks with ids from n * segment size to (n + 1) * segment size - 1 in tasks.json format,
+ manifest lists segments with their task counts. Save rewrites only segments with changed tasks,
+ load parses segments in parallel on ForkJoinPool and joins them in id order
+ */
+public class ShardedTaskStore implements TaskStore, TaskChangeListener {
+    static final int DEFAULT_SEGMENT_SIZE = 1 << 14;
+    private static final int MAGIC = 0x54534B4D; // "TSKM"
+    private static final int FORMAT_VERSION = 1;
+    private static final String MANIFEST = "manifest";
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private final Path m_directory;
+    private int m_segmentSize;
+    // segment number -> task count, the manifest
+    private final TreeMap<Integer, Integer> m_segments = new TreeMap<Integer, Integer>();
+    private final TreeSet<Integer> m_dirty = new TreeSet<Integer>();
+
+    /**
+     @param directory directory with manifest and segment files
+     @param segmentSize number of ids one segment covers, used when directory doesn't exist yet
+     */
+    ShardedTaskStore(Path directory, int segmentSize){
+        m_directory = directory;
+        m_segmentSize = segmentSize;
+    }
+
+    @Override
+    public List<JSONObject> load() throws IOException, JSONParseException {
+        m_segments.clear();
+        m_dirty.clear();
+        Path manifest = m_directory.resolve(MANIFEST);
+        if(!Files.exists(manifest)){
+            return new ArrayList<JSONObject>();
+        }
+        readManifest(manifest);
+
+        int[] segments = new int[m_segments.size()];
+        int total = 0;
+        int s = 0;
+        for(Map.Entry<Integer, Integer> segment: m_segments.entrySet()){
+            segments[s++] = segment.getKey();
+            total += segment.getValue();
+        }
+        List<List<JSONObject>> parsed = new ArrayList<List<JSONObject>>(segments.length);
+        for(int i = 0; i < segments.length; i++){
+            parsed.add(null);
+        }
+        try{
+            ForkJoinPool.commonPool().invoke(new SegmentLoad(segments, parsed, 0, segments.length));
+        } catch (SegmentParseException e){
+            throw e.getParseException();
+        } catch (UncheckedIOException e){
+            throw e.getCause();
+        }
+
+        // segments cover increasing id ranges, so joining them in segment order keeps the list sorted by id
+        List<JSONObject> JSONObjects = new ArrayList<JSONObject>(total + 1);
+        for(List<JSONObject> segmentTasks: parsed){
+            JSONObjects.addAll(segmentTasks);
+        }
+        return JSONObjects;
+    }
+
+    /**
+     Parses range of segments, splitting it in halves until one segment is left
+     */
+    @SuppressWarnings("serial")
+    private class SegmentLoad extends RecursiveAction {
+        private final int[] m_segmentNumbers;
+        private final List<List<JSONObject>> m_parsed;
+        private final int m_from;
+        private final int m_to;
+
+        SegmentLoad(int[] segmentNumbers, List<List<JSONObject>> parsed, int from, int to){
+            m_segmentNumbers = segmentNumbers;
+            m_parsed = parsed;
+            m_from = from;
+            m_to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(m_to - m_from <= 1){
+                if(m_to > m_from){
+                    m_parsed.set(m_from, parseSegment(m_segmentNumbers[m_from]));
+                }
+                return;
+            }
+            int middle = (m_from + m_to) >>> 1;
+            invokeAll(new SegmentLoad(m_segmentNumbers, m_parsed, m_from, middle),
+                    new SegmentLoad(m_segmentNumbers, m_parsed, middle, m_to));
+        }
+    }
+
+    /**
+     Carries JSONParseException out of fork-join task
+     */
+    private static class SegmentParseException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SegmentParseException(JSONParseException cause){
+            super(cause);
+        }
+
+        JSONParseException getParseException(){
+            return (JSONParseException) getCause();
+        }
+    }
+
+    private List<JSONObject> parseSegment(int segment){
+        Path path = segmentPath(segment);
+        try{
+            return new JSONParser(Files.readString(path)).parse();
+        } catch (JSONParseException e){
+            throw new SegmentParseException(new JSONParseException(m_directory.getFileName() + "/" + path.getFileName(),
+                    e.getReason(), e.getLine(), e.getColumn()));
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public TaskChangeListener changes() {
+        return this;
+    }
+
+    @Override
+    public void taskAdded(JSONObject task) {
+        m_dirty.add(segmentOf(task.getId()));
+    }
+
+    @Override
+    public void taskUpdated(JSONObject task) {
+        m_dirty.add(segmentOf(task.getId()));
+    }
+
+    @Override
+    public void taskDeleted(int id) {
+        m_dirty.add(segmentOf(id));
+    }
+
+    /**
+     Rewrites segments that had tasks added, changed or deleted, then the manifest
+     */
+    @Override
+    public void save(List<JSONObject> JSONObjects) throws IOException {
+        Files.createDirectories(m_directory);
+        for(int segment: m_dirty){
+            List<JSONObject> segmentTasks = segmentTasks(JSONObjects, segment);
+            writeSegment(segment, segmentTasks);
+        }
+        writeManifest();
+        m_dirty.clear();
+    }
+
+    @Override
+    public void saveAll(List<JSONObject> JSONObjects) throws IOException {
+        Files.createDirectories(m_directory);
+        TreeMap<Integer, Integer> oldSegments = new TreeMap<Integer, Integer>(m_segments);
+        Path manifest = m_directory.resolve(MANIFEST);
+        if(oldSegments.isEmpty() && Files.exists(manifest)){
+            readManifest(manifest);
+            oldSegments.putAll(m_segments);
+        }
+        m_segments.clear();
+
+        int size = JSONObjects.size();
+        int start = 0;
+        while(start < size){
+            int segment = segmentOf(TaskTracker.idAt(JSONObjects, start));
+            int end = start + 1;
+            while(end < size && segmentOf(TaskTracker.idAt(JSONObjects, end)) == segment){
+                end++;
+            }
+            writeSegment(segment, JSONObjects.subList(start, end));
+            start = end;
+        }
+        writeManifest();
+        for(int segment: oldSegments.keySet()){
+            if(!m_segments.containsKey(segment)){
+                Files.deleteIfExists(segmentPath(segment));
+            }
+        }
+        m_dirty.clear();
+    }
+
+    /**
+     @return tasks of the segment found with binary search over list sorted by id
+     */
+    private List<JSONObject> segmentTasks(List<JSONObject> JSONObjects, int segment){
+        long firstId = (long) segment * m_segmentSize;
+        int start = lowerBound(JSONObjects, firstId);
+        int end = lowerBound(JSONObjects, firstId + m_segmentSize);
+        return JSONObjects.subList(start, end);
+    }
+
+    /**
+     @return index of the first task with id not less than given id
+     */
+    private static int lowerBound(List<JSONObject> JSONObjects, long id){
+        if(id > Integer.MAX_VALUE){
+            return JSONObjects.size();
+        }
+        if(id < Integer.MIN_VALUE){
+            return 0;
+        }
+        int index = TaskJournal.insertionIndex((int) id, JSONObjects);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     Writes segment through temporary file, removes segment file if it has no tasks left
+     */
+    private void writeSegment(int segment, List<JSONObject> segmentTasks) throws IOException {
+        Path path = segmentPath(segment);
+        if(segmentTasks.isEmpty()){
+            Files.deleteIfExists(path);
+            m_segments.remove(segment);
+            return;
+        }
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)){
+            Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+            new JSONWriter(writer).writeJSON(segmentTasks);
+            writer.flush();
+            channel.force(false);
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        m_segments.put(segment, segmentTasks.size());
+    }
+
+    private void readManifest(Path manifest) throws IOException {
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))){
+            if(input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION){
+                throw new IOException(manifest + " is not a manifest of version " + FORMAT_VERSION);
+            }
+            m_segmentSize = input.readInt();
+            int count = input.readInt();
+            for(int i = 0; i < count; i++){
+                m_segments.put(input.readInt(), input.readInt());
+            }
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        Path manifest = m_directory.resolve(MANIFEST);
+        Path temporaryPath = manifest.resolveSibling(MANIFEST + ".tmp");
+        try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))){
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(m_segmentSize);
+            output.writeInt(m_segments.size());
+            for(Map.Entry<Integer, Integer> segment: m_segments.entrySet()){
+                output.writeInt(segment.getKey());
+                output.writeInt(segment.getValue());
+            }
+        }
+        Files.move(temporaryPath, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private int segmentOf(int id){
+        return Math.floorDiv(id, m_segmentSize);
+    }
+
+    private Path segmentPath(int segment){
+        return m_directory.resolve("segment-" + segment + ".json");
+    }
+}
@@ -0,0 +1,304 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ Cold tier for old done tasks, kept out of the hot storage so commands don't parse and rewrite them.
+ tasks.archive directory holds GZIP-compressed segments with one task per line in journal record format
+ (JSONWriter.writeCompactTask) and index file with lowest and highest id, task count and createdAt/updatedAt
+ range of every segment. Every archive run appends one segment, segments are never changed afterwards.
+ Readers decompress only segments whose ranges can match the query, so list --ids 5 reads one segment at most
+ and list todo reads none.
+ Segment is written before archived tasks are removed from the hot storage, task that ends up in both after
+ a crash is read from the hot storage
+ */
+public class TaskArchive {
+    static final Path PATH = Path.of("./tasks.archive");
+    private static final int MAGIC = 0x54534B41; // "TSKA"
+    private static final int FORMAT_VERSION = 1;
+    static final String INDEX = "index";
+
+    /**
+     Index entry of one segment, times are epoch millis like in TaskTable
+     */
+    static class Segment {
+        final int number;
+        final int count;
+        final int minId;
+        final int maxId;
+        final long minCreated;
+        final long maxCreated;
+        final long minUpdated;
+        final long maxUpdated;
+
+        Segment(int number, int count, int minId, int maxId, long minCreated, long maxCreated, long minUpdated, long maxUpdated){
+            this.number = number;
+            this.count = count;
+            this.minId = minId;
+            this.maxId = maxId;
+            this.minCreated = minCreated;
+            this.maxCreated = maxCreated;
+            this.minUpdated = minUpdated;
+            this.maxUpdated = maxUpdated;
+        }
+    }
+
+    private final Path m_directory;
+    private final List<Segment> m_segments = new ArrayList<Segment>();
+
+    private TaskArchive(Path directory){
+        m_directory = directory;
+    }
+
+    /**
+     Reads index of the archive
+     @return archive, empty if directory doesn't exist yet
+     */
+    public static TaskArchive open(Path directory) throws IOException {
+        TaskArchive archive = new TaskArchive(directory);
+        Path index = directory.resolve(INDEX);
+        if(Files.exists(index)){
+            archive.readIndex(index);
+        }
+        return archive;
+    }
+
+    public boolean isEmpty(){
+        return m_segments.isEmpty();
+    }
+
+    /**
+     @return number of archived tasks
+     */
+    public long size(){
+        long size = 0;
+        for(Segment segment: m_segments){
+            size += segment.count;
+        }
+        return size;
+    }
+
+    /**
+     @return highest archived id, -1 if the archive is empty
+     */
+    public int maxId(){
+        int maxId = -1;
+        for(Segment segment: m_segments){
+            maxId = Math.max(maxId, segment.maxId);
+        }
+        return maxId;
+    }
+
+    /**
+     Writes tasks into new segment and adds it to the index, both are written to temporary file,
+     forced to disk and renamed over
+     @param JSONObjects tasks sorted by id, nothing is written if empty
+     */
+    public void append(List<JSONObject> JSONObjects) throws IOException {
+        if(JSONObjects.isEmpty()){
+            return;
+        }
+        Files.createDirectories(m_directory);
+        int number = m_segments.isEmpty() ? 0 : m_segments.getLast().number + 1;
+        long minCreated = Long.MAX_VALUE;
+        long maxCreated = Long.MIN_VALUE;
+        long minUpdated = Long.MAX_VALUE;
+        long maxUpdated = Long.MIN_VALUE;
+        Path path = segmentPath(number);
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            GZIPOutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            Writer writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8), 1 << 16);
+            JSONWriter jsonWriter = new JSONWriter(writer);
+            for(JSONObject task: JSONObjects){
+                jsonWriter.writeCompactTask(task);
+                writer.write('\n');
+                long created = MappedTaskList.toEpochMilli(task.getCreatedAt());
+                long updated = MappedTaskList.toEpochMilli(task.getUpdatedAt());
+                minCreated = Math.min(minCreated, created);
+                maxCreated = Math.max(maxCreated, created);
+                minUpdated = Math.min(minUpdated, updated);
+                maxUpdated = Math.max(maxUpdated, updated);
+            }
+            writer.flush();
+            gzip.finish();
+            channel.force(false);
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        m_segments.add(new Segment(number, JSONObjects.size(), JSONObjects.getFirst().getId(), JSONObjects.getLast().getId(),
+                minCreated, maxCreated, minUpdated, maxUpdated));
+        writeIndex();
+    }
+
+    /**
+     Reads tasks of every segment the query can match, other segments aren't decompressed.
+     Tasks aren't filtered by the query, it is run over them afterwards
+     @return archived tasks sorted by id, empty list if query can't match archived task
+     */
+    public List<JSONObject> load(TaskQuery query) throws IOException, JSONParseException {
+        List<JSONObject> JSONObjects = new ArrayList<JSONObject>();
+        boolean sorted = true;
+        for(Segment segment: m_segments){
+            if(!query.mayMatch(segment)){
+                continue;
+            }
+            int first = JSONObjects.size();
+            readSegment(segment, JSONObjects);
+            if(first > 0 && first < JSONObjects.size()
+                    && JSONObjects.get(first - 1).getId() >= JSONObjects.get(first).getId()){
+                sorted = false;
+            }
+        }
+        if(!sorted){
+            // segments of different runs can have overlapping id ranges
+            JSONObjects.sort((first, second) -> Integer.compare(first.getId(), second.getId()));
+        }
+        return JSONObjects;
+    }
+
+    /**
+     Prints every archived task segment by segment, reading one line at a time
+     @return number of printed tasks
+     */
+    public long export(TaskPrinter printer) throws IOException, JSONParseException {
+        long count = 0;
+        for(Segment segment: m_segments){
+            try(BufferedReader reader = openSegment(segment)){
+                String line;
+                while((line = reader.readLine()) != null){
+                    if(!line.isEmpty()){
+                        printer.print(new JSONParser(line).parseSingleTask());
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     @return true if task with given id is archived, only segments with id in their range are read
+     */
+    public boolean contains(int id) throws IOException, JSONParseException {
+        for(Segment segment: m_segments){
+            if(id < segment.minId || id > segment.maxId){
+                continue;
+            }
+            List<JSONObject> JSONObjects = new ArrayList<JSONObject>(segment.count);
+            readSegment(segment, JSONObjects);
+            if(TaskJournal.insertionIndex(id, JSONObjects) >= 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void readSegment(Segment segment, List<JSONObject> JSONObjects) throws IOException, JSONParseException {
+        try(BufferedReader reader = openSegment(segment)){
+            String line;
+            while((line = reader.readLine()) != null){
+                if(!line.isEmpty()){
+                    JSONObjects.add(new JSONParser(line).parseSingleTask());
+                }
+            }
+        }
+    }
+
+    private BufferedReader openSegment(Segment segment) throws IOException {
+        return new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(segmentPath(segment.number)), 1 << 16), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     Joins hot tasks with archived ones into one list sorted by id, hot task wins when id is in both
+     @param hot list sorted by id
+     @param archived list sorted by id
+     */
+    static List<JSONObject> merge(List<JSONObject> hot, List<JSONObject> archived){
+        List<JSONObject> merged = new ArrayList<JSONObject>(hot.size() + archived.size());
+        int hotIndex = 0;
+        int archivedIndex = 0;
+        while(hotIndex < hot.size() || archivedIndex < archived.size()){
+            if(archivedIndex == archived.size()){
+                merged.add(hot.get(hotIndex++));
+                continue;
+            }
+            if(hotIndex == hot.size()){
+                merged.add(archived.get(archivedIndex++));
+                continue;
+            }
+            int hotId = hot.get(hotIndex).getId();
+            int archivedId = archived.get(archivedIndex).getId();
+            if(archivedId < hotId){
+                merged.add(archived.get(archivedIndex++));
+            } else {
+                if(archivedId == hotId){
+                    archivedIndex++;
+                }
+                merged.add(hot.get(hotIndex++));
+            }
+        }
+        return merged;
+    }
+
+    private void readIndex(Path index) throws IOException {
+        try(DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(index)))){
+            if(input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION){
+                throw new IOException(index + " is not an archive index of version " + FORMAT_VERSION);
+            }
+            int count = input.readInt();
+            for(int i = 0; i < count; i++){
+                m_segments.add(new Segment(input.readInt(), input.readInt(), input.readInt(), input.readInt(),
+                        input.readLong(), input.readLong(), input.readLong(), input.readLong()));
+            }
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        Path index = m_directory.resolve(INDEX);
+        Path temporaryPath = index.resolveSibling(INDEX + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(m_segments.size());
+            for(Segment segment: m_segments){
+                output.writeInt(segment.number);
+                output.writeInt(segment.count);
+                output.writeInt(segment.minId);
+                output.writeInt(segment.maxId);
+                output.writeLong(segment.minCreated);
+                output.writeLong(segment.maxCreated);
+                output.writeLong(segment.minUpdated);
+                output.writeLong(segment.maxUpdated);
+            }
+            output.flush();
+            channel.force(false);
+        }
+        Files.move(temporaryPath, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path segmentPath(int number){
+        return m_directory.resolve("segment-" + number + ".ndjson.gz");
+    }
+}
@@ -0,0 +1,255 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ Runs many commands in one process: reads one command per line from a file or stdin,
+ loads tasks once, runs every line against the same list and saves once at the end
+ (or every N commands with --save-every N).
+ Line is split into arguments the way shell does it: by whitespace, with "double" or 'single' quotes
+ keeping spaces inside an argument. Empty lines and lines starting with # are skipped.
+ Failed line is reported with its number and doesn't stop the batch.
+ With TASKS_FLUSH_INTERVAL set changes are also saved in background by TaskPersister while lines keep running.
+ Batch holds exclusive tasks.lock from loading until the last save, see TaskLock
+ */
+@SuppressWarnings("try")
+public class TaskBatch {
+    private final List<JSONObject> m_tasks;
+    private final TaskStore m_store;
+    private final TaskIndexes m_indexes = new TaskIndexes();
+    private final DirtyTracker m_changes;
+    private final TaskLock m_fileLock;
+    private final int m_saveEvery;
+    private final TaskPersister m_persister;
+    private int m_failed;
+
+    TaskBatch(TaskStore store, List<JSONObject> tasks, TaskLock fileLock, int saveEvery) throws IOException {
+        m_store = store;
+        m_fileLock = fileLock;
+        m_tasks = tasks;
+        m_indexes.setTable(TaskTable.build(tasks));
+        m_indexes.loadSearchIfSaved(tasks);
+        m_saveEvery = saveEvery;
+        // persister synchronizes on the batch, lines run holding it
+        m_persister = TaskPersister.fromEnvironment(this, this::save);
+        TaskChangeListener changes = store.changes().andThen(m_indexes);
+        m_changes = new DirtyTracker(m_persister != null ? changes.andThen(m_persister) : changes);
+    }
+
+    /**
+     Entry point for "batch [--save-every N] [file]" command.
+     If daemon is running every line is sent to it instead
+     @return exit code, 1 if any line failed
+     */
+    public static int run(String[] args){
+        int saveEvery = 0;
+        Path file = null;
+        for(int i = 1; i < args.length; i++){
+            if(args[i].equals("--save-every") && i + 1 < args.length){
+                try{
+                    saveEvery = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException ignored){
+                    System.err.println("--save-every needs number of commands");
+                    return 1;
+                }
+            } else if(file == null){
+                file = Path.of(args[i]);
+            } else {
+                TaskTracker.helpPrint(System.out, "batch");
+                return 1;
+            }
+        }
+
+        try(BufferedReader reader = file != null
+                ? Files.newBufferedReader(file, StandardCharsets.UTF_8)
+                : new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))){
+            if(TaskDaemon.isRunning()){
+                return forwardLines(reader);
+            }
+            TaskStore store = TaskTracker.openStore(TaskTracker.storageName());
+            if(store == null){
+                return 1;
+            }
+            try(TaskLock lock = TaskLock.open(TaskLock.PATH)){
+                try(TaskStats.Phase phase = TaskStats.phase("lock")){
+                    lock.lockExclusive();
+                }
+                List<JSONObject> tasks = TaskTracker.loadFromStore(store);
+                if(tasks == null){
+                    return 1;
+                }
+                return new TaskBatch(store, tasks, lock, saveEvery).runLines(reader);
+            }
+        } catch (IOException e){
+            System.err.println("Uh-oh IOException: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     Runs every line against loaded list, saves once at the end if anything changed
+     */
+    private int runLines(BufferedReader reader) throws IOException {
+        int lineNumber = 0;
+        int commands = 0;
+        String line;
+        // one phase for all lines, so stats of long batch don't grow with it, saves are phases of their own
+        try(TaskStats.Phase phase = TaskStats.phase("commands")){
+            while((line = reader.readLine()) != null){
+                lineNumber++;
+                if(isSkipped(line)){
+                    continue;
+                }
+                commands++;
+                synchronized(this){
+                    try{
+                        runLine(parseLine(line));
+                    } catch (TaskCommandException e){
+                        System.err.printf("Line %d: %s\n", lineNumber, e.getMessage());
+                        m_failed++;
+                    }
+                    if(m_saveEvery > 0 && commands % m_saveEvery == 0){
+                        save();
+                    }
+                }
+            }
+        }
+        if(m_persister != null){
+            m_persister.close();
+        }
+        save();
+        // compaction started by the last save has to finish before the lock is released
+        m_store.awaitBackgroundSave();
+        if(m_failed != 0){
+            System.err.printf("Batch finished: %d commands, %d failed\n", commands, m_failed);
+            return 1;
+        }
+        return 0;
+    }
+
+    private void runLine(String[] args) throws TaskCommandException {
+        checkCommand(args);
+        TaskTracker.runCommand(args, m_tasks, m_indexes, m_changes, System.out);
+    }
+
+    /**
+     @throws TaskCommandException for commands that manage storage files or keep running themselves,
+     they are run only from the command line
+     */
+    private static void checkCommand(String[] args) throws TaskCommandException {
+        boolean rejected = switch(args[0]){
+            case "batch", "serve", "convert", "export", "import" -> true;
+            case "list" -> Arrays.asList(args).contains(TaskWatch.ARGUMENT);
+            default -> false;
+        };
+        if(rejected){
+            String command = args[0].equals("list") ? "list " + TaskWatch.ARGUMENT : args[0];
+            throw new TaskCommandException("Command \"" + command + "\" can't be used inside batch");
+        }
+    }
+
+    private void save() throws IOException {
+        if(m_changes.isDirty()){
+            try(TaskStats.Phase phase = TaskStats.phase("save")){
+                m_indexes.deleteStaleSearch(false);
+                m_store.save(m_tasks);
+            } finally {
+                // failed save may leave storage written partly, other processes and the daemon have to load it again
+                m_fileLock.incrementVersion();
+            }
+            m_changes.markClean();
+        }
+        TaskTracker.saveIndexes(m_indexes);
+    }
+
+    /**
+     Sends lines to the running daemon one by one, daemon persists them itself
+     */
+    private static int forwardLines(BufferedReader reader) throws IOException {
+        int lineNumber = 0;
+        int commands = 0;
+        int failed = 0;
+        String line;
+        while((line = reader.readLine()) != null){
+            lineNumber++;
+            if(isSkipped(line)){
+                continue;
+            }
+            commands++;
+            try{
+                String[] args = parseLine(line);
+                checkCommand(args);
+                if(TaskDaemon.forward(args) != 0){
+                    System.err.printf("Line %d: command failed\n", lineNumber);
+                    failed++;
+                }
+            } catch (TaskCommandException e){
+                System.err.printf("Line %d: %s\n", lineNumber, e.getMessage());
+                failed++;
+            }
+        }
+        if(failed != 0){
+            System.err.printf("Batch finished: %d commands, %d failed\n", commands, failed);
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     @return true for empty lines and comments
+     */
+    static boolean isSkipped(String line){
+        String stripped = line.strip();
+        return stripped.isEmpty() || stripped.startsWith("#");
+    }
+
+    /**
+     Splits line that isn't skipped (see isSkipped) into arguments
+     @return arguments
+     @throws TaskCommandException if line has unclosed quote
+     */
+    static String[] parseLine(String line) throws TaskCommandException {
+        List<String> args = new ArrayList<String>();
+        StringBuilder current = new StringBuilder();
+        boolean inArgument = false;
+        char quote = 0;
+
+        for(int i = 0; i < line.length(); i++){
+            char c = line.charAt(i);
+            if(quote != 0){
+                if(c == quote){
+                    quote = 0;
+                } else if(c == '\\' && quote == '"' && i + 1 < line.length()){
+                    current.append(line.charAt(++i));
+                } else {
+                    current.append(c);
+                }
+            } else if(c == '"' || c == '\''){
+                quote = c;
+                inArgument = true;
+            } else if(Character.isWhitespace(c)){
+                if(inArgument){
+                    args.add(current.toString());
+                    current.setLength(0);
+                    inArgument = false;
+                }
+            } else {
+                current.append(c);
+                inArgument = true;
+            }
+        }
+        if(quote != 0){
+            throw new TaskCommandException("Unclosed " + quote + " quote");
+        }
+        if(inArgument){
+            args.add(current.toString());
+        }
+        return args.toArray(new String[0]);
+    }
+}
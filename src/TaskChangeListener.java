@@ -0,0 +1,77 @@
+/**
+ Receives notifications from task handlers about every change they make to the task list,
+ lets storage persist only what actually changed
+ */
+public interface TaskChangeListener {
+    TaskChangeListener NONE = new TaskChangeListener() {
+        @Override
+        public void taskAdded(JSONObject task) {}
+
+        @Override
+        public void taskUpdated(JSONObject task) {}
+
+        @Override
+        public void taskDeleted(int id) {}
+    };
+
+    /**
+     Called after new task was appended to the list
+     @param task added object
+     */
+    void taskAdded(JSONObject task);
+
+    /**
+     Called after any field of existing task was changed (description, status, updatedAt)
+     @param task changed object
+     */
+    void taskUpdated(JSONObject task);
+
+    /**
+     Called after task was removed from the list
+     @param id id of removed task
+     */
+    void taskDeleted(int id);
+
+    /**
+     Called after several tasks were removed from the list in one pass (bulk delete),
+     listeners keeping per-task arrays override it to drop every task at once
+     @param ids ids of removed tasks in increasing order
+     */
+    default void tasksDeleted(int[] ids){
+        for(int id: ids){
+            taskDeleted(id);
+        }
+    }
+
+    /**
+     @return listener that notifies this listener and then the next one
+     */
+    default TaskChangeListener andThen(TaskChangeListener next){
+        TaskChangeListener first = this;
+        return new TaskChangeListener() {
+            @Override
+            public void taskAdded(JSONObject task) {
+                first.taskAdded(task);
+                next.taskAdded(task);
+            }
+
+            @Override
+            public void taskUpdated(JSONObject task) {
+                first.taskUpdated(task);
+                next.taskUpdated(task);
+            }
+
+            @Override
+            public void taskDeleted(int id) {
+                first.taskDeleted(id);
+                next.taskDeleted(id);
+            }
+
+            @Override
+            public void tasksDeleted(int[] ids) {
+                first.tasksDeleted(ids);
+                next.tasksDeleted(ids);
+            }
+        };
+    }
+}
@@ -0,0 +1,9 @@
+/**
+ Thrown by command handlers when command can't be executed (wrong id, nothing to list, etc.),
+ message is meant to be shown to the user as is
+ */
+public class TaskCommandException extends Exception {
+    TaskCommandException(String message){
+        super(message);
+    }
+}
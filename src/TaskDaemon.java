@@ -0,0 +1,286 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ Long-running server that keeps task list in memory and runs commands sent over unix domain socket (tasks.sock).
+ Every connection is handled on its own virtual thread, commands run one at a time against the resident list.
+ Commands hold tasks.lock like in-process runs do, and tasks are loaded again if another process saved them
+ since the daemon loaded them (see TaskLock).
+ With TASKS_FLUSH_INTERVAL set changes are saved by TaskPersister in background instead of after every command,
+ daemon keeps exclusive tasks.lock from the first unsaved change until they are saved, so other processes wait for them.
+ Protocol:
+ request: int argument count, then every argument as int byte length and UTF-8 bytes;
+ response: int exit code, int length and bytes of command output, int length and bytes of error output
+ */
+@SuppressWarnings("try")
+public class TaskDaemon {
+    static final Path SOCKET_PATH = Path.of("./tasks.sock");
+    private static final int MAX_ARGUMENTS = 1024;
+    private static final int MAX_ARGUMENT_LENGTH = 1 << 20;
+
+    private final TaskStore m_store;
+    private final TaskLock m_fileLock;
+    private List<JSONObject> m_tasks;
+    private TaskIndexes m_indexes;
+    private TaskChangeListener m_changes;
+    private long m_version;
+    private final Object m_lock = new Object();
+    private final TaskPersister m_persister;
+
+    /**
+     @param tasks tasks loaded from store
+     @param fileLock lock of the store files
+     @param version version tasks were loaded at
+     */
+    TaskDaemon(TaskStore store, List<JSONObject> tasks, TaskLock fileLock, long version) throws IOException {
+        m_store = store;
+        m_fileLock = fileLock;
+        m_version = version;
+        m_persister = TaskPersister.fromEnvironment(m_lock, this::flush);
+        setTasks(tasks);
+    }
+
+    private void setTasks(List<JSONObject> tasks) throws IOException {
+        m_tasks = tasks;
+        m_indexes = new TaskIndexes();
+        m_indexes.setTable(TaskTable.build(tasks));
+        m_indexes.loadSearchIfSaved(tasks);
+        m_changes = m_store.changes().andThen(m_indexes);
+        if(m_persister != null){
+            m_changes = m_changes.andThen(m_persister);
+        }
+    }
+
+    /**
+     Saves changes TaskPersister collected, called holding m_lock.
+     Exclusive tasks.lock is held since the first of them, it is released only when they are saved
+     */
+    private void flush() throws IOException {
+        m_fileLock.lockExclusive();
+        m_indexes.deleteStaleSearch(false);
+        m_store.save(m_tasks);
+        m_store.awaitBackgroundSave();
+        m_version = m_fileLock.incrementVersion();
+        m_indexes.save();
+        m_fileLock.release();
+    }
+
+    /**
+     Binds tasks.sock and serves connections until the process is stopped,
+     socket file is removed on shutdown
+     @throws IOException if socket can't be bound or another daemon is already running
+     */
+    public void serve() throws IOException {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(SOCKET_PATH);
+        if(Files.exists(SOCKET_PATH)){
+            if(canConnect(address)){
+                throw new IOException("Daemon is already running on " + SOCKET_PATH);
+            }
+            // socket file was left by daemon that didn't shut down properly
+            Files.delete(SOCKET_PATH);
+        }
+
+        try(ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)){
+            server.bind(address);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try{
+                    Files.deleteIfExists(SOCKET_PATH);
+                } catch (IOException ignored){
+                }
+            }));
+            System.out.println("Serving tasks on " + SOCKET_PATH.toAbsolutePath().normalize());
+
+            while(true){
+                SocketChannel client = server.accept();
+                Thread.ofVirtual().name("task-client").start(() -> handle(client));
+            }
+        }
+    }
+
+    private void handle(SocketChannel client){
+        try(client){
+            DataInputStream input = new DataInputStream(Channels.newInputStream(client));
+            String[] args = readArguments(input);
+
+            ByteArrayOutputStream outBytes = new ByteArrayOutputStream();
+            ByteArrayOutputStream errBytes = new ByteArrayOutputStream();
+            int exitCode = execute(args,
+                    new PrintStream(outBytes, false, StandardCharsets.UTF_8),
+                    new PrintStream(errBytes, false, StandardCharsets.UTF_8));
+
+            DataOutputStream output = new DataOutputStream(Channels.newOutputStream(client));
+            output.writeInt(exitCode);
+            output.writeInt(outBytes.size());
+            outBytes.writeTo(output);
+            output.writeInt(errBytes.size());
+            errBytes.writeTo(output);
+            output.flush();
+        } catch (EOFException ignored){
+            // client disconnected without sending a command
+        } catch (IOException e){
+            System.err.println("Client connection failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     Runs command against resident list and persists it if command changed anything
+     @return exit code the same as in-process run would have
+     */
+    private int execute(String[] args, PrintStream out, PrintStream err){
+        if(args.length == 0){
+            TaskTracker.helpPrint(out);
+            return 0;
+        }
+        synchronized(m_lock){
+            // stats of forwarded commands go where the daemon's TASKS_STATS says
+            TaskStats stats = TaskStats.start(args[0], TaskStats.configuredTarget());
+            try{
+                try(TaskStats.Phase phase = TaskStats.phase("lock")){
+                    // while changes wait for flush exclusive lock is still held, nobody else could save tasks
+                    if(!hasPendingChanges()){
+                        if(TaskTracker.needsExclusiveLock(args[0])){
+                            m_fileLock.lockExclusive();
+                        } else {
+                            m_fileLock.lockShared();
+                        }
+                    }
+                }
+                long version = m_fileLock.readVersion();
+                if(version != m_version){
+                    // tasks were saved by process that didn't go through the daemon
+                    try(TaskStats.Phase phase = TaskStats.phase("load")){
+                        setTasks(m_store.load());
+                    }
+                    m_version = version;
+                }
+                TaskStats.countTasks(m_tasks.size());
+                DirtyTracker changes = new DirtyTracker(m_changes);
+                try(TaskStats.Phase phase = TaskStats.phase("command")){
+                    TaskTracker.runCommand(args, m_tasks, m_indexes, changes, out);
+                }
+                if(changes.isDirty() && m_persister == null){
+                    try(TaskStats.Phase phase = TaskStats.phase("save")){
+                        m_indexes.deleteStaleSearch(TaskTracker.changesDescriptions(args[0]));
+                        m_store.save(m_tasks);
+                        m_store.awaitBackgroundSave();
+                    }
+                    m_version = m_fileLock.incrementVersion();
+                }
+                if(!hasPendingChanges()){
+                    m_indexes.save();
+                }
+                return 0;
+            } catch (TaskCommandException e){
+                err.println(e.getMessage());
+            } catch (JSONParseException e){
+                err.println(e.getMessage());
+            } catch (IOException e){
+                err.println("Error: There seems to be the problem with tasks storage (" + e.getMessage() + ")");
+            } finally {
+                if(!hasPendingChanges()){
+                    releaseFileLock(err);
+                }
+                out.flush();
+                err.flush();
+                stats.finish();
+            }
+            return 1;
+        }
+    }
+
+    private boolean hasPendingChanges(){
+        return m_persister != null && m_persister.hasPending();
+    }
+
+    private void releaseFileLock(PrintStream err){
+        try{
+            m_fileLock.release();
+        } catch (IOException e){
+            err.println("Couldn't release " + TaskLock.PATH + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     @return true if socket file of running daemon exists
+     */
+    public static boolean isRunning(){
+        return Files.exists(SOCKET_PATH);
+    }
+
+    /**
+     Sends command to running daemon and prints its output.
+     Once the command is sent the daemon may have run it, so losing the response is reported as failure
+     instead of being thrown, caller must not run the command again
+     @param args command line arguments
+     @return exit code of the command, 1 if the response was lost
+     @throws IOException if daemon can't be reached or the command couldn't be sent, it wasn't run then
+     */
+    public static int forward(String[] args) throws IOException {
+        SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET_PATH));
+        try{
+            DataOutputStream output = new DataOutputStream(Channels.newOutputStream(channel));
+            output.writeInt(args.length);
+            for(String arg: args){
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+            output.flush();
+        } catch (IOException e){
+            channel.close();
+            throw e;
+        }
+
+        try(channel){
+            DataInputStream input = new DataInputStream(Channels.newInputStream(channel));
+            int exitCode = input.readInt();
+            System.out.write(input.readNBytes(input.readInt()));
+            System.out.flush();
+            System.err.write(input.readNBytes(input.readInt()));
+            System.err.flush();
+            return exitCode;
+        } catch (IOException e){
+            System.err.println("Uh-oh IOException: daemon didn't answer (" + e.getMessage() + "), "
+                    + "the command may have been run, check tasks before running it again");
+            return 1;
+        }
+    }
+
+    private static boolean canConnect(UnixDomainSocketAddress address){
+        try{
+            SocketChannel.open(address).close();
+            return true;
+        } catch (IOException refused){
+            return false;
+        }
+    }
+
+    private static String[] readArguments(DataInputStream input) throws IOException {
+        int count = input.readInt();
+        if(count < 0 || count > MAX_ARGUMENTS){
+            throw new IOException("Bad argument count " + count);
+        }
+        String[] args = new String[count];
+        for(int i = 0; i < count; i++){
+            int length = input.readInt();
+            if(length < 0 || length > MAX_ARGUMENT_LENGTH){
+                throw new IOException("Bad argument length " + length);
+            }
+            args[i] = new String(input.readNBytes(length), StandardCharsets.UTF_8);
+        }
+        return args;
+    }
+}
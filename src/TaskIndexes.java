@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ Optional in-memory indexes of the task list (status table, description search index,
+ createdAt and updatedAt time indexes).
+ Passes every change to the indexes that are present, so registering it once
+ keeps indexes added later up to date as well
+ */
+public class TaskIndexes implements TaskChangeListener {
+    private TaskTable m_table;
+    private SearchIndex m_search;
+    private TaskTimeIndex m_createdIndex;
+    private TaskTimeIndex m_updatedIndex;
+
+    public TaskTable getTable() {
+        return m_table;
+    }
+
+    public void setTable(TaskTable table) {
+        m_table = table;
+    }
+
+    public SearchIndex getSearch() {
+        return m_search;
+    }
+
+    /**
+     Returns search index, loading it from tasks.search or building it from the list on first use
+     @param rebuild true to build index from the list even if it is already loaded or saved
+     */
+    public SearchIndex loadSearch(List<JSONObject> JSONObjects, boolean rebuild) throws IOException {
+        if(m_search == null || rebuild){
+            m_search = SearchIndex.load(SearchIndex.PATH, JSONObjects, rebuild);
+        }
+        return m_search;
+    }
+
+    /**
+     Loads search index only if tasks.search exists, so commands changing descriptions keep it up to date
+     */
+    public void loadSearchIfSaved(List<JSONObject> JSONObjects) throws IOException {
+        if(m_search == null && Files.exists(SearchIndex.PATH)){
+            loadSearch(JSONObjects, false);
+        }
+    }
+
+    /**
+     @param updated true for updatedAt index, false for createdAt index
+     @return time index if it was already built and no task was added or deleted since, null otherwise
+     */
+    public TaskTimeIndex getTimeIndex(boolean updated){
+        return updated ? m_updatedIndex : m_createdIndex;
+    }
+
+    /**
+     Returns time index, building it from the list (or status table when it is set) on first use
+     @param updated true for updatedAt index, false for createdAt index
+     */
+    public TaskTimeIndex loadTimeIndex(List<JSONObject> JSONObjects, boolean updated){
+        TaskTimeIndex index = getTimeIndex(updated);
+        if(index == null){
+            TaskTable table = m_table != null && m_table.size() == JSONObjects.size() ? m_table : null;
+            index = TaskTimeIndex.build(JSONObjects, table, updated);
+            if(updated){
+                m_updatedIndex = index;
+            } else {
+                m_createdIndex = index;
+            }
+        }
+        return index;
+    }
+
+    /**
+     Deletes tasks.search that won't describe tasks once they are saved, has to be called before the storage is saved.
+     Saved index is checked only by task count and id sum, which update doesn't change, so the old file
+     left by failing to save the index after the storage would be trusted with postings of old descriptions
+     @param descriptionsChanged true if descriptions were changed by a command that didn't load the search index,
+     tasks.search could be written by another process after the command loaded tasks
+     */
+    public void deleteStaleSearch(boolean descriptionsChanged) throws IOException {
+        if(m_search != null ? m_search.isModified() : descriptionsChanged){
+            Files.deleteIfExists(SearchIndex.PATH);
+        }
+    }
+
+    /**
+     Writes indexes that have to be persisted and were changed
+     */
+    public void save() throws IOException {
+        if(m_search != null && m_search.isModified()){
+            m_search.save(SearchIndex.PATH);
+        }
+    }
+
+    @Override
+    public void taskAdded(JSONObject task) {
+        if(m_table != null){
+            m_table.taskAdded(task);
+        }
+        if(m_search != null){
+            m_search.taskAdded(task);
+        }
+        // time indexes hold list indexes, which shift, they are built again when needed
+        m_createdIndex = null;
+        m_updatedIndex = null;
+    }
+
+    @Override
+    public void taskUpdated(JSONObject task) {
+        if(m_table != null){
+            m_table.taskUpdated(task);
+        }
+        if(m_search != null){
+            m_search.taskUpdated(task);
+        }
+        m_updatedIndex = null;
+    }
+
+    @Override
+    public void taskDeleted(int id) {
+        if(m_table != null){
+            m_table.taskDeleted(id);
+        }
+        if(m_search != null){
+            m_search.taskDeleted(id);
+        }
+        m_createdIndex = null;
+        m_updatedIndex = null;
+    }
+
+    @Override
+    public void tasksDeleted(int[] ids) {
+        if(m_table != null){
+            m_table.tasksDeleted(ids);
+        }
+        if(m_search != null){
+            m_search.tasksDeleted(ids);
+        }
+        m_createdIndex = null;
+        m_updatedIndex = null;
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ Append-only log of task changes kept next to tasks.json.
+ Every record is one line:
+ "+{task}" puts (adds or replaces) whole task with the same id,
+ "-id" deletes task with given id.
+ Records are idempotent, so replaying the log over tasks.json snapshot
+ gives the same list no matter if compaction was interrupted
+ */
+public class TaskJournal implements TaskChangeListener {
+    static final long DEFAULT_COMPACTION_THRESHOLD = 4L << 20;
+
+    private final Path m_journalPath;
+    private final long m_compactionThreshold;
+    private final StringWriter m_pending = new StringWriter();
+    private final JSONWriter m_recordWriter = new JSONWriter(m_pending);
+    private long m_journalSize;
+
+    TaskJournal(Path journalPath, long compactionThreshold){
+        m_journalPath = journalPath;
+        m_compactionThreshold = compactionThreshold;
+    }
+
+    @Override
+    public void taskAdded(JSONObject task) {
+        putRecord(task);
+    }
+
+    @Override
+    public void taskUpdated(JSONObject task) {
+        putRecord(task);
+    }
+
+    @Override
+    public void taskDeleted(int id) {
+        m_pending.append('-').append(Integer.toString(id)).append('\n');
+    }
+
+    private void putRecord(JSONObject task){
+        m_pending.append('+');
+        try{
+            m_recordWriter.writeCompactTask(task);
+        } catch (IOException e){
+            // StringWriter never throws
+            throw new IllegalStateException(e);
+        }
+        m_pending.append('\n');
+    }
+
+    /**
+     Applies every complete record of the journal to the list loaded from snapshot,
+     last line without line break is ignored as it was torn by interrupted append
+     @param JSONObjects list loaded from tasks.json, sorted by id
+     @throws JSONParseException with line of journal if record is malformed
+     */
+    public void replay(List<JSONObject> JSONObjects) throws IOException, JSONParseException {
+        if(!Files.exists(m_journalPath)){
+            m_journalSize = 0;
+            return;
+        }
+        String journal = Files.readString(m_journalPath);
+        m_journalSize = Files.size(m_journalPath);
+
+        int lineStart = 0;
+        int lineNumber = 1;
+        int lineEnd;
+        while((lineEnd = journal.indexOf('\n', lineStart)) != -1){
+            if(lineEnd > lineStart){
+                applyRecord(journal, lineStart, lineEnd, lineNumber, JSONObjects);
+            }
+            lineStart = lineEnd + 1;
+            lineNumber++;
+        }
+    }
+
+    private void applyRecord(String journal, int start, int end, int lineNumber, List<JSONObject> JSONObjects)
+            throws JSONParseException {
+        char operation = journal.charAt(start);
+        if(operation == '+'){
+            JSONObject task;
+            try{
+                task = new JSONParser(journal.subSequence(start + 1, end)).parseSingleTask();
+            } catch (JSONParseException e){
+                throw new JSONParseException("tasks.journal", e.getReason(), lineNumber, e.getColumn() + 1);
+            }
+            int index = insertionIndex(task.getId(), JSONObjects);
+            if(index >= 0){
+                JSONObjects.set(index, task);
+            } else {
+                JSONObjects.add(-index - 1, task);
+            }
+        } else if(operation == '-'){
+            int id;
+            try{
+                id = Integer.parseInt(journal, start + 1, end, 10);
+            } catch (NumberFormatException e){
+                throw new JSONParseException("tasks.journal", "Expected id of deleted task", lineNumber, 2);
+            }
+            int index = insertionIndex(id, JSONObjects);
+            if(index >= 0){
+                JSONObjects.remove(index);
+            }
+        } else {
+            throw new JSONParseException("tasks.journal", "Unknown record type '" + operation + "'", lineNumber, 1);
+        }
+    }
+
+    /**
+     Appends records collected since the last flush to the journal in one write
+     */
+    public void flush() throws IOException {
+        if(m_pending.getBuffer().isEmpty()){
+            return;
+        }
+        byte[] records = m_pending.toString().getBytes(StandardCharsets.UTF_8);
+        try(FileChannel channel = FileChannel.open(m_journalPath,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.APPEND)){
+            ByteBuffer buffer = ByteBuffer.wrap(records);
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+            m_journalSize = channel.size();
+        }
+        m_pending.getBuffer().setLength(0);
+    }
+
+    public boolean needsCompaction(){
+        return m_journalSize >= m_compactionThreshold;
+    }
+
+    /**
+     Writes full list as new tasks.json snapshot through temporary file and atomic rename,
+     then empties the journal
+     @param JSONObjects list with journal already applied
+     @param snapshot store of tasks.json
+     */
+    public void compact(List<JSONObject> JSONObjects, JSONTaskStore snapshot) throws IOException {
+        snapshot.saveAllAtomically(JSONObjects);
+        Files.deleteIfExists(m_journalPath);
+        m_journalSize = 0;
+    }
+
+    /**
+     Runs compaction on separate non-daemon thread so command output isn't delayed by it,
+     the process still waits for compaction to finish before exiting.
+     List must not be changed while compaction runs
+     */
+    public Thread compactInBackground(List<JSONObject> JSONObjects, JSONTaskStore snapshot){
+        Thread compaction = new Thread(() -> {
+            try{
+                compact(JSONObjects, snapshot);
+            } catch (IOException e){
+                System.err.println("Journal compaction failed, journal is kept: " + e.getMessage());
+            }
+        }, "journal-compaction");
+        compaction.start();
+        return compaction;
+    }
+
+    /**
+     Binary search over list sorted by id
+     @return index of task with given id, or (-(insertion point) - 1) if there is no such task
+     */
+    static int insertionIndex(int id, List<JSONObject> JSONObjects){
+        int firstIndex = 0;
+        int lastIndex = JSONObjects.size() - 1;
+        while(firstIndex <= lastIndex){
+            int midIndex = (firstIndex + lastIndex) >>> 1;
+            int midID = TaskTracker.idAt(JSONObjects, midIndex);
+            if(midID == id){
+                return midIndex;
+            } else if(midID > id){
+                lastIndex = midIndex - 1;
+            } else {
+                firstIndex = midIndex + 1;
+            }
+        }
+        return -firstIndex - 1;
+    }
+}
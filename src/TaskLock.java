@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ Coordinates processes working with the same tasks through tasks.lock file.
+ Commands that only read tasks hold shared lock, commands that save them hold exclusive lock.
+ Header of the file keeps version counter that grows with every save, so process that loaded
+ tasks without holding the lock can find out if another process saved them in the meantime.
+ Lock file isn't replaced by saves, unlike tasks.json which is renamed over, so the lock
+ always guards the same file
+ */
+public class TaskLock implements AutoCloseable {
+    static final Path PATH = Path.of("./tasks.lock");
+    private static final int VERSION_POSITION = 0;
+
+    private final FileChannel m_channel;
+    private final ByteBuffer m_versionBuffer = ByteBuffer.allocate(Long.BYTES);
+    private FileLock m_lock;
+
+    private TaskLock(FileChannel channel){
+        m_channel = channel;
+    }
+
+    /**
+     Opens lock file, creating it with version 0 if it doesn't exist
+     */
+    public static TaskLock open(Path path) throws IOException {
+        return new TaskLock(FileChannel.open(path,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE));
+    }
+
+    /**
+     Waits until no other process holds exclusive lock
+     */
+    public void lockShared() throws IOException {
+        release();
+        m_lock = m_channel.lock(0, Long.MAX_VALUE, true);
+    }
+
+    /**
+     Waits until no other process holds any lock, does nothing if exclusive lock is already held
+     */
+    public void lockExclusive() throws IOException {
+        if(m_lock != null && !m_lock.isShared()){
+            return;
+        }
+        release();
+        m_lock = m_channel.lock(0, Long.MAX_VALUE, false);
+    }
+
+    public void release() throws IOException {
+        if(m_lock != null){
+            m_lock.release();
+            m_lock = null;
+        }
+    }
+
+    /**
+     Reads version counter, lock has to be held
+     @return version of saved tasks, 0 if nothing was saved under the lock yet
+     */
+    public long readVersion() throws IOException {
+        m_versionBuffer.clear();
+        while(m_versionBuffer.hasRemaining()){
+            if(m_channel.read(m_versionBuffer, VERSION_POSITION + m_versionBuffer.position()) < 0){
+                return 0;
+            }
+        }
+        return m_versionBuffer.getLong(0);
+    }
+
+    /**
+     Increments version counter after tasks were saved, exclusive lock has to be held
+     @return new version
+     */
+    public long incrementVersion() throws IOException {
+        long version = readVersion() + 1;
+        m_versionBuffer.clear();
+        m_versionBuffer.putLong(0, version);
+        while(m_versionBuffer.hasRemaining()){
+            m_channel.write(m_versionBuffer, VERSION_POSITION + m_versionBuffer.position());
+        }
+        return version;
+    }
+
+    @Override
+    public void close() throws IOException {
+        release();
+        m_channel.close();
+    }
+}
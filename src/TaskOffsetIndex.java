@@ -0,0 +1,286 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ Sidecar of tasks.json (tasks.json.idx) with byte offset and length of every task object in file order,
+ so single task commands read and patch only the object they need.
+ Header keeps size and modification time of tasks.json the index was made for,
+ index that doesn't match current tasks.json is stale and gets rebuilt by the next full load.
+ It also keeps how many bytes of tasks.json deleted tasks were blanked with since it was written whole
+ */
+public class TaskOffsetIndex {
+    private static final int MAGIC = 0x54534B49; // "TSKI"
+    private static final int FORMAT_VERSION = 2;
+    private static final int STAMP_POSITION = 8;
+    private static final int COUNT_POSITION = 24;
+    private static final int BLANK_LENGTH_POSITION = 28;
+    private static final int HEADER_SIZE = 36;
+    private static final int ENTRY_SIZE = 16;
+    private static final int OFFSET = 4;
+    private static final int LENGTH = 12;
+
+    private final ByteBuffer m_entries;
+    private final int m_count;
+    private final long m_blankLength;
+
+    private TaskOffsetIndex(ByteBuffer entries, int count, long blankLength){
+        m_entries = entries;
+        m_count = count;
+        m_blankLength = blankLength;
+    }
+
+    /**
+     @return path of the index next to given tasks.json
+     */
+    public static Path pathFor(Path jsonPath){
+        return jsonPath.resolveSibling(jsonPath.getFileName() + ".idx");
+    }
+
+    /**
+     Maps index of tasks.json if it exists and matches the file
+     @return index or null if it is missing or stale
+     */
+    public static TaskOffsetIndex open(Path jsonPath) throws IOException {
+        Path indexPath = pathFor(jsonPath);
+        if(!Files.exists(indexPath) || !Files.exists(jsonPath)){
+            return null;
+        }
+        try(FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ)){
+            if(channel.size() < HEADER_SIZE){
+                return null;
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            int count = header.getInt(COUNT_POSITION);
+            if(header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION
+                    || header.getLong(STAMP_POSITION) != Files.size(jsonPath)
+                    || header.getLong(STAMP_POSITION + 8) != Files.getLastModifiedTime(jsonPath).toMillis()
+                    || channel.size() != HEADER_SIZE + (long) count * ENTRY_SIZE){
+                return null;
+            }
+            return new TaskOffsetIndex(channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, (long) count * ENTRY_SIZE), count,
+                    header.getLong(BLANK_LENGTH_POSITION));
+        }
+    }
+
+    public int size(){
+        return m_count;
+    }
+
+    /**
+     @return bytes of tasks.json filled with spaces in place of deleted tasks,
+     0 for index rebuilt from a file that was patched before
+     */
+    public long getBlankLength(){
+        return m_blankLength;
+    }
+
+    public int idAt(int index){
+        return m_entries.getInt(index * ENTRY_SIZE);
+    }
+
+    public long offsetAt(int index){
+        return m_entries.getLong(index * ENTRY_SIZE + OFFSET);
+    }
+
+    public int lengthAt(int index){
+        return m_entries.getInt(index * ENTRY_SIZE + LENGTH);
+    }
+
+    /**
+     Binary search over ids, works when tasks.json is sorted by id like every save leaves it
+     @return index of entry with given id or -1 if there is none
+     */
+    public int find(int id){
+        int firstIndex = 0;
+        int lastIndex = m_count - 1;
+        while(firstIndex <= lastIndex){
+            int midIndex = (firstIndex + lastIndex) >>> 1;
+            int midID = idAt(midIndex);
+            if(midID == id){
+                return midIndex;
+            } else if(midID > id){
+                lastIndex = midIndex - 1;
+            } else {
+                firstIndex = midIndex + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     Records size and modification time of tasks.json after it was patched in place,
+     so the index isn't taken as stale
+     */
+    public static void stamp(Path jsonPath) throws IOException {
+        ByteBuffer stamp = ByteBuffer.allocate(16);
+        stamp.putLong(0, Files.size(jsonPath));
+        stamp.putLong(8, Files.getLastModifiedTime(jsonPath).toMillis());
+        try(FileChannel channel = FileChannel.open(pathFor(jsonPath), StandardOpenOption.WRITE)){
+            while(stamp.hasRemaining()){
+                channel.write(stamp, STAMP_POSITION + stamp.position());
+            }
+        }
+    }
+
+    /**
+     Copies entries into builder leaving out entries at given indexes
+     @param removed sorted indexes of entries to leave out
+     */
+    public Builder without(int[] removed){
+        Builder builder = new Builder(m_count);
+        int next = 0;
+        for(int i = 0; i < m_count; i++){
+            if(next < removed.length && removed[next] == i){
+                next++;
+                continue;
+            }
+            builder.add(idAt(i), offsetAt(i), lengthAt(i));
+        }
+        return builder;
+    }
+
+    /**
+     Collects entries in file order and writes them as index of tasks.json
+     */
+    public static class Builder {
+        private int[] m_ids;
+        private long[] m_offsets;
+        private int[] m_lengths;
+        private int m_count;
+        private long m_blankLength;
+
+        Builder(int capacity){
+            capacity = Math.max(capacity, 16);
+            m_ids = new int[capacity];
+            m_offsets = new long[capacity];
+            m_lengths = new int[capacity];
+        }
+
+        /**
+         Makes entries from char ranges of task objects found by JSONParser in the text of tasks.json,
+         offsets are turned into UTF-8 byte offsets in one pass over the text
+         @param ranges start and end (exclusive) char index of every task object, in file order
+         */
+        static Builder fromCharRanges(CharSequence text, List<JSONObject> JSONObjects, int[] ranges){
+            int count = JSONObjects.size();
+            Builder builder = new Builder(count);
+            long bytes = 0;
+            int position = 0;
+            for(int i = 0; i < count; i++){
+                bytes += utf8Length(text, position, ranges[2 * i]);
+                long start = bytes;
+                bytes += utf8Length(text, ranges[2 * i], ranges[2 * i + 1]);
+                position = ranges[2 * i + 1];
+                builder.add(JSONObjects.get(i).getId(), start, (int) (bytes - start));
+            }
+            return builder;
+        }
+
+        /**
+         @param blankLength bytes of tasks.json filled with spaces, written into the header by write
+         */
+        public void setBlankLength(long blankLength){
+            m_blankLength = blankLength;
+        }
+
+        public void add(int id, long offset, int length){
+            if(m_count == m_ids.length){
+                int capacity = m_count * 2;
+                m_ids = Arrays.copyOf(m_ids, capacity);
+                m_offsets = Arrays.copyOf(m_offsets, capacity);
+                m_lengths = Arrays.copyOf(m_lengths, capacity);
+            }
+            m_ids[m_count] = id;
+            m_offsets[m_count] = offset;
+            m_lengths[m_count] = length;
+            m_count++;
+        }
+
+        /**
+         Writes index next to tasks.json through temporary file, tasks.json must be already written
+         */
+        public void write(Path jsonPath) throws IOException {
+            Path indexPath = pathFor(jsonPath);
+            Path temporaryPath = Files.createTempFile(indexPath.toAbsolutePath().getParent(), indexPath.getFileName().toString(), ".tmp");
+            try(DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath), 1 << 16))){
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                output.writeLong(Files.size(jsonPath));
+                output.writeLong(Files.getLastModifiedTime(jsonPath).toMillis());
+                output.writeInt(m_count);
+                output.writeLong(m_blankLength);
+                for(int i = 0; i < m_count; i++){
+                    output.writeInt(m_ids[i]);
+                    output.writeLong(m_offsets[i]);
+                    output.writeInt(m_lengths[i]);
+                }
+            }
+            Files.move(temporaryPath, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        /**
+         Adds entries to the end of index of tasks.json that got tasks appended in place, then stamps it.
+         Count in the header is written after the entries, interrupted append leaves index that doesn't match its size,
+         so it is taken as stale
+         */
+        public void append(Path jsonPath) throws IOException {
+            try(FileChannel channel = FileChannel.open(pathFor(jsonPath), StandardOpenOption.READ, StandardOpenOption.WRITE)){
+                ByteBuffer count = ByteBuffer.allocate(Integer.BYTES);
+                if(channel.read(count, COUNT_POSITION) != Integer.BYTES){
+                    throw new IOException(pathFor(jsonPath) + " is truncated");
+                }
+                int oldCount = count.getInt(0);
+                ByteBuffer entries = ByteBuffer.allocate(m_count * ENTRY_SIZE);
+                for(int i = 0; i < m_count; i++){
+                    entries.putInt(m_ids[i]);
+                    entries.putLong(m_offsets[i]);
+                    entries.putInt(m_lengths[i]);
+                }
+                entries.flip();
+                long position = HEADER_SIZE + (long) oldCount * ENTRY_SIZE;
+                while(entries.hasRemaining()){
+                    channel.write(entries, position + entries.position());
+                }
+                count.putInt(0, oldCount + m_count);
+                count.clear();
+                while(count.hasRemaining()){
+                    channel.write(count, COUNT_POSITION + count.position());
+                }
+            }
+            stamp(jsonPath);
+        }
+    }
+
+    /**
+     @return number of bytes chars from start to end take in UTF-8
+     */
+    static long utf8Length(CharSequence text, int start, int end){
+        long length = 0;
+        for(int i = start; i < end; i++){
+            char c = text.charAt(i);
+            if(c < 0x80){
+                length++;
+            } else if(c < 0x800){
+                length += 2;
+            } else if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))){
+                length += 4;
+                i++;
+            } else if(Character.isSurrogate(c)){
+                // encoder replaces unpaired surrogate with '?'
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
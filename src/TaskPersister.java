@@ -0,0 +1,198 @@
+import java.io.IOException;
+
+/**
+ Write-behind persistence of the task list kept in memory (batch, serve or code embedding task handlers).
+ It listens to the same change notifications as storage does, but only counts them; background thread
+ then saves every change made so far in one flush, once the oldest unsaved change is older than the interval
+ or as soon as given number of changes piled up, so a burst of commands costs a few saves instead of one per command.
+ What flush does is up to the owner (TaskStore.save, which writes temporary file, forces it and renames it
+ over tasks.json for json storage, version of tasks.lock...).
+ Commands and flushes hold the same monitor: flush never sees half-done command and commands wait while
+ the list is written. flush() saves synchronously, close() saves what is left and stops the thread,
+ it is also called by shutdown hook, so changes aren't lost when the process is stopped
+ */
+public final class TaskPersister implements TaskChangeListener, AutoCloseable {
+    static final int DEFAULT_MAX_CHANGES = 1000;
+
+    /**
+     Saves every change made since the last flush, called holding the monitor
+     */
+    public interface Flush {
+        void run() throws IOException;
+    }
+
+    private final Object m_monitor;
+    private final Flush m_flush;
+    private final long m_intervalNanos;
+    private final int m_maxChanges;
+    private final Thread m_thread;
+    private final Thread m_shutdownHook;
+    private int m_pending;
+    private long m_firstPendingNanos;
+    private int m_flushes;
+    private boolean m_closed;
+
+    /**
+     @param monitor object commands changing the list synchronize on
+     @param intervalMillis longest time change waits for flush
+     @param maxChanges number of changes that are flushed right away
+     */
+    public TaskPersister(Object monitor, Flush flush, long intervalMillis, int maxChanges){
+        m_monitor = monitor;
+        m_flush = flush;
+        m_intervalNanos = intervalMillis * 1_000_000;
+        m_maxChanges = Math.max(1, maxChanges);
+        m_thread = Thread.ofPlatform().daemon().name("task-persister").unstarted(this::flushLoop);
+        m_shutdownHook = new Thread(this::closeOnShutdown);
+        m_thread.start();
+        Runtime.getRuntime().addShutdownHook(m_shutdownHook);
+    }
+
+    /**
+     Creates persister configured by TASKS_FLUSH_INTERVAL (milliseconds) and TASKS_FLUSH_CHANGES environment variables
+     @return persister or null if TASKS_FLUSH_INTERVAL isn't set or is 0, then every command is saved synchronously
+     */
+    static TaskPersister fromEnvironment(Object monitor, Flush flush){
+        long interval = readNumber("TASKS_FLUSH_INTERVAL", 0);
+        if(interval <= 0){
+            return null;
+        }
+        int maxChanges = (int) Math.min(Integer.MAX_VALUE, readNumber("TASKS_FLUSH_CHANGES", DEFAULT_MAX_CHANGES));
+        return new TaskPersister(monitor, flush, interval, maxChanges);
+    }
+
+    private static long readNumber(String variable, long defaultValue){
+        String value = System.getenv(variable);
+        if(value == null){
+            return defaultValue;
+        }
+        try {
+            long number = Long.parseLong(value);
+            if(number >= 0){
+                return number;
+            }
+        } catch (NumberFormatException ignored){
+        }
+        System.err.println(variable + " is not a non-negative number, using " + defaultValue);
+        return defaultValue;
+    }
+
+    @Override
+    public void taskAdded(JSONObject task) {
+        changed(1);
+    }
+
+    @Override
+    public void taskUpdated(JSONObject task) {
+        changed(1);
+    }
+
+    @Override
+    public void taskDeleted(int id) {
+        changed(1);
+    }
+
+    @Override
+    public void tasksDeleted(int[] ids) {
+        changed(ids.length);
+    }
+
+    private void changed(int count){
+        synchronized(m_monitor){
+            if(m_pending == 0){
+                m_firstPendingNanos = System.nanoTime();
+                m_monitor.notifyAll();
+            }
+            m_pending += count;
+            if(m_pending >= m_maxChanges){
+                m_monitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     @return true if some changes weren't saved yet
+     */
+    public boolean hasPending(){
+        synchronized(m_monitor){
+            return m_pending != 0;
+        }
+    }
+
+    /**
+     @return number of flushes that saved anything
+     */
+    public int getFlushCount(){
+        synchronized(m_monitor){
+            return m_flushes;
+        }
+    }
+
+    /**
+     Saves pending changes now, in the calling thread
+     */
+    public void flush() throws IOException {
+        synchronized(m_monitor){
+            if(m_pending == 0){
+                return;
+            }
+            m_flush.run();
+            m_pending = 0;
+            m_flushes++;
+        }
+    }
+
+    private void flushLoop(){
+        synchronized(m_monitor){
+            while(!m_closed){
+                try{
+                    if(m_pending == 0){
+                        m_monitor.wait();
+                        continue;
+                    }
+                    long waitNanos = m_firstPendingNanos + m_intervalNanos - System.nanoTime();
+                    if(m_pending < m_maxChanges && waitNanos > 0){
+                        // wait releases the monitor, commands keep running until the interval passes
+                        m_monitor.wait(Math.max(1, waitNanos / 1_000_000));
+                        continue;
+                    }
+                    flush();
+                } catch (InterruptedException ignored){
+                    return;
+                } catch (IOException e){
+                    // changes stay pending and are tried again after another interval
+                    System.err.println("Uh-oh IOException: couldn't save tasks: " + e.getMessage());
+                    m_firstPendingNanos = System.nanoTime();
+                }
+            }
+        }
+    }
+
+    /**
+     Saves what is left and stops background thread
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized(m_monitor){
+            if(m_closed){
+                return;
+            }
+            m_closed = true;
+            m_monitor.notifyAll();
+        }
+        try{
+            Runtime.getRuntime().removeShutdownHook(m_shutdownHook);
+        } catch (IllegalStateException ignored){
+            // process is already shutting down, the hook is what called close
+        }
+        flush();
+    }
+
+    private void closeOnShutdown(){
+        try{
+            close();
+        } catch (IOException e){
+            System.err.println("Uh-oh IOException: couldn't save tasks on shutdown: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ JDK Flight Recorder event of one phase of a command, see TaskStats.
+ Event duration is the phase wall time
+ */
+@Name("tasktracker.Phase")
+@Label("Task Tracker Phase")
+@Category("Task Tracker")
+@Description("Phase of a task tracker command: lock, load, read, parse, command, save, write, sync, indexes, output")
+public class TaskPhaseEvent extends Event {
+    @Label("Command")
+    String command;
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Tasks")
+    @Description("Number of tasks loaded for the command, 0 if they weren't loaded yet")
+    int tasks;
+}
@@ -0,0 +1,209 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+
+/**
+ Writes tasks to command output in one of the list formats through one large buffer,
+ so printing many tasks doesn't flush on every line. Call finish after the last task.
+ Formats:
+ text - the block layout list always had, table - one aligned row per task,
+ ndjson - one JSON object per line, csv - header and one row per task
+ */
+public class TaskPrinter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.FULL, FormatStyle.SHORT);
+    private static final int DATE_CACHE_SIZE = 256;
+
+    public enum Format {
+        text, table, ndjson, csv
+    }
+
+    private final Writer m_writer;
+    private final JSONWriter m_jsonWriter;
+    private final Format m_format;
+    private boolean m_started;
+    // localized date shows minutes at most, so tasks from the same minute share formatted string
+    private final long[] m_cachedMinutes = new long[DATE_CACHE_SIZE];
+    private final String[] m_cachedDates = new String[DATE_CACHE_SIZE];
+
+    TaskPrinter(PrintStream out, Format format){
+        m_writer = new BufferedWriter(new OutputStreamWriter(out, out.charset()), BUFFER_SIZE);
+        m_jsonWriter = new JSONWriter(m_writer);
+        m_format = format;
+    }
+
+    /**
+     @return format with given name
+     @throws TaskCommandException if there is no such format
+     */
+    static Format parseFormat(String name) throws TaskCommandException {
+        for(Format format: Format.values()){
+            if(format.name().equals(name)){
+                return format;
+            }
+        }
+        throw new TaskCommandException("Unknown format \"" + name + "\", use one of: text, table, ndjson, csv");
+    }
+
+    public void print(JSONObject task) throws IOException {
+        if(!m_started){
+            start();
+        }
+        switch(m_format){
+            case text -> printText(task);
+            case table -> printRow(task);
+            case ndjson -> {
+                m_jsonWriter.writeCompactTask(task);
+                m_writer.write('\n');
+            }
+            case csv -> printCSV(task);
+        }
+    }
+
+    /**
+     Writes text that isn't a task (for example hint about the next page) in text and table formats,
+     machine-readable formats get only tasks
+     */
+    public void printNote(String note) throws IOException {
+        if(m_format == Format.text || m_format == Format.table){
+            m_writer.write(note);
+            m_writer.write('\n');
+        }
+    }
+
+    /**
+     Writes id of task that is gone (list --watch): note in text and table formats,
+     {"id":5,"removed":true} line in ndjson, csv has no way to show it
+     */
+    public void printRemoved(int id) throws IOException {
+        if(!m_started){
+            start();
+        }
+        if(m_format == Format.ndjson){
+            m_writer.write("{\"id\":" + id + ",\"removed\":true}\n");
+        } else {
+            printNote("Removed ID: " + id);
+        }
+    }
+
+    /**
+     Writes header if nothing was printed and flushes everything to the output stream
+     */
+    public void finish() throws IOException {
+        if(!m_started){
+            start();
+        }
+        m_writer.flush();
+    }
+
+    private void start() throws IOException {
+        m_started = true;
+        if(m_format == Format.table){
+            m_writer.write(String.format("%10s  %-11s  %-16s  %-16s  %s\n", "ID", "STATUS", "CREATED", "UPDATED", "DESCRIPTION"));
+        } else if(m_format == Format.csv){
+            m_writer.write("id,description,status,createdAt,updatedAt\r\n");
+        }
+    }
+
+    private void printText(JSONObject task) throws IOException {
+        m_writer.write("ID: ");
+        m_jsonWriter.writeInt(task.getId());
+        m_writer.write("\nTask: ");
+        m_writer.write(task.getDescription());
+        m_writer.write("\nMarked as: ");
+        m_writer.write(TaskTracker.statusToString(task.getStatus()));
+        m_writer.write("\nCreated at: ");
+        m_writer.write(localizedDateTime(task.getCreatedAt()));
+        m_writer.write("\nUpdated at: ");
+        m_writer.write(localizedDateTime(task.getUpdatedAt()));
+        m_writer.write("\n\n");
+    }
+
+    private void printRow(JSONObject task) throws IOException {
+        String id = Integer.toString(task.getId());
+        pad(10 - id.length());
+        m_writer.write(id);
+        m_writer.write("  ");
+        String status = TaskTracker.statusToString(task.getStatus());
+        m_writer.write(status);
+        pad(11 - status.length());
+        m_writer.write("  ");
+        writeMinutes(task.getCreatedAt());
+        m_writer.write("  ");
+        writeMinutes(task.getUpdatedAt());
+        m_writer.write("  ");
+        // row has to stay on one line
+        String description = task.getDescription();
+        for(int i = 0; i < description.length(); i++){
+            char c = description.charAt(i);
+            m_writer.write(c == '\n' || c == '\r' || c == '\t' ? ' ' : c);
+        }
+        m_writer.write('\n');
+    }
+
+    private void printCSV(JSONObject task) throws IOException {
+        m_jsonWriter.writeInt(task.getId());
+        m_writer.write(',');
+        String description = task.getDescription();
+        if(description.indexOf(',') >= 0 || description.indexOf('"') >= 0
+                || description.indexOf('\n') >= 0 || description.indexOf('\r') >= 0){
+            m_writer.write('"');
+            m_writer.write(description.replace("\"", "\"\""));
+            m_writer.write('"');
+        } else {
+            m_writer.write(description);
+        }
+        m_writer.write(',');
+        m_writer.write(TaskTracker.statusToString(task.getStatus()));
+        m_writer.write(',');
+        m_jsonWriter.writeDateTime(task.getCreatedAt());
+        m_writer.write(',');
+        m_jsonWriter.writeDateTime(task.getUpdatedAt());
+        m_writer.write("\r\n");
+    }
+
+    /**
+     Writes date-time as yyyy-MM-dd HH:mm
+     */
+    private void writeMinutes(LocalDateTime dateTime) throws IOException {
+        int year = dateTime.getYear();
+        m_writer.write(Integer.toString(year));
+        m_writer.write('-');
+        writeTwoDigits(dateTime.getMonthValue());
+        m_writer.write('-');
+        writeTwoDigits(dateTime.getDayOfMonth());
+        m_writer.write(' ');
+        writeTwoDigits(dateTime.getHour());
+        m_writer.write(':');
+        writeTwoDigits(dateTime.getMinute());
+    }
+
+    private void writeTwoDigits(int value) throws IOException {
+        m_writer.write('0' + value / 10);
+        m_writer.write('0' + value % 10);
+    }
+
+    private void pad(int count) throws IOException {
+        for(int i = 0; i < count; i++){
+            m_writer.write(' ');
+        }
+    }
+
+    private String localizedDateTime(LocalDateTime dateTime){
+        long minute = Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 60);
+        int slot = (int) (minute & (DATE_CACHE_SIZE - 1));
+        String formatted = m_cachedDates[slot];
+        if(formatted == null || m_cachedMinutes[slot] != minute){
+            formatted = DATE_TIME_FORMATTER.format(dateTime);
+            m_cachedMinutes[slot] = minute;
+            m_cachedDates[slot] = formatted;
+        }
+        return formatted;
+    }
+}
@@ -0,0 +1,628 @@
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ Filter, order and page of list command: status, id range or id list, createdAt and updatedAt ranges,
+ sort key and --limit/--offset/--after page. Bulk delete and mark-* use the same filters through select.
+ run picks the way to produce the page:
+ - id order: walks the list (or status bitset of TaskTable) between id bounds and stops when the page is full,
+   a narrow time range is read from TaskTimeIndex instead when the index is already built
+ - time index: walks TaskTimeIndex of the sort field inside its time range, used when the index is
+   already built (daemon, batch) or the whole sorted list is asked for anyway
+ - top-k: one pass over matching tasks keeping offset + limit + 1 first ones in a bounded heap,
+   so a page of time-sorted tasks doesn't need every task sorted
+ */
+public class TaskQuery {
+    enum SortKey {
+        id, created, updated
+    }
+
+    private static final Pattern AGE = Pattern.compile("(\\d+)([dhm])");
+    // id-ordered query reads time index range instead of scanning when the range holds at most 1/8 of tasks
+    private static final int NARROW_RANGE_DIVISOR = 8;
+
+    private TaskStatus m_status;
+    private int m_idFrom = Integer.MIN_VALUE;
+    private int m_idTo = Integer.MAX_VALUE;
+    // sorted ids from id list (10,11,12) or null
+    private int[] m_idList;
+    // epoch millis, from is inclusive, to is exclusive
+    private long m_createdFrom = Long.MIN_VALUE;
+    private long m_createdTo = Long.MAX_VALUE;
+    private long m_updatedFrom = Long.MIN_VALUE;
+    private long m_updatedTo = Long.MAX_VALUE;
+    private SortKey m_sort = SortKey.id;
+    private boolean m_descending;
+    private int m_offset;
+    private int m_limit = Integer.MAX_VALUE;
+    private boolean m_hasAfter;
+    private int m_after;
+
+    public void setStatus(TaskStatus status){
+        m_status = status;
+    }
+
+    /**
+     Applies list option, filter options included
+     @param name option name with leading dashes
+     @return false if there is no such option
+     @throws TaskCommandException if value can't be parsed
+     */
+    public boolean setOption(String name, String value) throws TaskCommandException {
+        switch(name){
+            case "--limit":
+                m_limit = TaskTracker.parseCount(name, value);
+                break;
+            case "--offset":
+                m_offset = TaskTracker.parseCount(name, value);
+                break;
+            case "--after":
+                m_after = TaskTracker.parseID(value);
+                m_hasAfter = true;
+                break;
+            case "--sort":
+                parseSort(value);
+                break;
+            default:
+                return setFilterOption(name, value);
+        }
+        return true;
+    }
+
+    /**
+     Applies option that selects tasks: --ids, --status, --older-than and time ranges
+     @param name option name with leading dashes
+     @return false if there is no such option
+     @throws TaskCommandException if value can't be parsed
+     */
+    public boolean setFilterOption(String name, String value) throws TaskCommandException {
+        switch(name){
+            case "--ids":
+                setIds(value);
+                break;
+            case "--status":
+                m_status = TaskTracker.parseStatus(value);
+                if(m_status == null){
+                    throw new TaskCommandException("Unknown status \"" + value + "\", use one of: todo, in-progress, done");
+                }
+                break;
+            case "--older-than":
+                m_createdTo = parseTime(name, value);
+                break;
+            case "--created-after":
+                m_createdFrom = parseTime(name, value);
+                break;
+            case "--created-before":
+                m_createdTo = parseTime(name, value);
+                break;
+            case "--updated-after":
+                m_updatedFrom = parseTime(name, value);
+                break;
+            case "--updated-before":
+                m_updatedTo = parseTime(name, value);
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     Sets ids to select: single id, inclusive range FROM..TO where either side can be left out (10.. or ..10),
+     or list of ids separated with commas (10,11,12)
+     */
+    public void setIds(String value) throws TaskCommandException {
+        if(value.indexOf(',') >= 0){
+            String[] parts = value.split(",");
+            int[] ids = new int[parts.length];
+            for(int i = 0; i < parts.length; i++){
+                ids[i] = TaskTracker.parseID(parts[i].trim());
+            }
+            Arrays.sort(ids);
+            int size = 0;
+            for(int id: ids){
+                if(size == 0 || ids[size - 1] != id){
+                    ids[size++] = id;
+                }
+            }
+            ids = Arrays.copyOf(ids, size);
+            m_idList = ids;
+            m_idFrom = ids[0];
+            m_idTo = ids[ids.length - 1];
+            return;
+        }
+        m_idList = null;
+        int separator = value.indexOf("..");
+        if(separator < 0){
+            m_idFrom = TaskTracker.parseID(value);
+            m_idTo = m_idFrom;
+            return;
+        }
+        String from = value.substring(0, separator);
+        String to = value.substring(separator + 2);
+        m_idFrom = from.isEmpty() ? Integer.MIN_VALUE : TaskTracker.parseID(from);
+        m_idTo = to.isEmpty() ? Integer.MAX_VALUE : TaskTracker.parseID(to);
+    }
+
+    /**
+     @return true if no filter was set, so the query selects every task
+     */
+    public boolean selectsEverything(){
+        return m_status == null && m_idList == null && m_idFrom == Integer.MIN_VALUE && m_idTo == Integer.MAX_VALUE
+                && m_createdFrom == Long.MIN_VALUE && m_createdTo == Long.MAX_VALUE
+                && m_updatedFrom == Long.MIN_VALUE && m_updatedTo == Long.MAX_VALUE;
+    }
+
+    /**
+     @return true if createdAt or updatedAt range was set
+     */
+    public boolean hasTimeRange(){
+        return m_createdFrom != Long.MIN_VALUE || m_createdTo != Long.MAX_VALUE
+                || m_updatedFrom != Long.MIN_VALUE || m_updatedTo != Long.MAX_VALUE;
+    }
+
+    /**
+     Checks ranges of archive segment against the filters, archive holds only done tasks
+     @return false if no task of the segment can match, so it doesn't need to be read
+     */
+    boolean mayMatch(TaskArchive.Segment segment){
+        if(m_status != null && m_status != TaskStatus.done){
+            return false;
+        }
+        if(segment.maxId < m_idFrom || segment.minId > m_idTo){
+            return false;
+        }
+        if(m_idList != null){
+            int position = Arrays.binarySearch(m_idList, segment.minId);
+            if(position < 0){
+                position = -position - 1;
+            }
+            if(position == m_idList.length || m_idList[position] > segment.maxId){
+                return false;
+            }
+        }
+        return segment.maxCreated >= m_createdFrom && segment.minCreated < m_createdTo
+                && segment.maxUpdated >= m_updatedFrom && segment.minUpdated < m_updatedTo;
+    }
+
+    /**
+     Parses date (2024-05-01), date-time (2024-05-01T10:30) or age counted back from now (7d, 12h, 30m)
+     @return epoch millis in the same UTC reading of local time the task table uses
+     */
+    static long parseTime(String option, String value) throws TaskCommandException {
+        Matcher age = AGE.matcher(value);
+        try{
+            if(age.matches()){
+                long amount = Long.parseLong(age.group(1));
+                LocalDateTime now = LocalDateTime.now();
+                LocalDateTime time = switch(age.group(2)){
+                    case "d" -> now.minusDays(amount);
+                    case "h" -> now.minusHours(amount);
+                    default -> now.minusMinutes(amount);
+                };
+                return MappedTaskList.toEpochMilli(time);
+            }
+            if(value.indexOf('T') >= 0){
+                return MappedTaskList.toEpochMilli(LocalDateTime.parse(value));
+            }
+            return MappedTaskList.toEpochMilli(LocalDate.parse(value).atStartOfDay());
+        } catch (DateTimeParseException | NumberFormatException | ArithmeticException e){
+            throw new TaskCommandException(option + " needs a date (2024-05-01), date and time (2024-05-01T10:30)"
+                    + " or age (7d, 12h, 30m), got \"" + value + "\"");
+        }
+    }
+
+    private void parseSort(String value) throws TaskCommandException {
+        String key = value;
+        m_descending = false;
+        int colon = value.indexOf(':');
+        if(colon >= 0){
+            key = value.substring(0, colon);
+            switch(value.substring(colon + 1)){
+                case "asc":
+                    break;
+                case "desc":
+                    m_descending = true;
+                    break;
+                default:
+                    throw new TaskCommandException("Sort order has to be asc or desc, got \"" + value + "\"");
+            }
+        }
+        try{
+            m_sort = SortKey.valueOf(key);
+        } catch (IllegalArgumentException e){
+            throw new TaskCommandException("Unknown sort key \"" + key + "\", use one of: id, created, updated");
+        }
+    }
+
+    /**
+     Finds every task matching the filters, sort and page are not used
+     @return list indexes of matching tasks in increasing order
+     */
+    public int[] select(List<JSONObject> JSONObjects, TaskIndexes indexes) throws TaskCommandException {
+        return new Run(JSONObjects, indexes, null).select();
+    }
+
+    /**
+     Prints the page of matching tasks
+     @param indexes indexes of the same list, time index built for the query is kept in them
+     @return id of the last printed task if more matching tasks are left after the page, Integer.MIN_VALUE otherwise
+     @throws TaskCommandException if --after task doesn't exist while sorting by time
+     */
+    public int run(List<JSONObject> JSONObjects, TaskIndexes indexes, TaskPrinter printer)
+            throws IOException, TaskCommandException {
+        Run run = new Run(JSONObjects, indexes, printer);
+        if(m_sort == SortKey.id){
+            return run.byId();
+        }
+        boolean updated = m_sort == SortKey.updated;
+        TaskTimeIndex timeIndex = indexes.getTimeIndex(updated);
+        if(timeIndex == null && m_limit == Integer.MAX_VALUE){
+            timeIndex = indexes.loadTimeIndex(JSONObjects, updated);
+        }
+        return timeIndex != null ? run.byTimeIndex(timeIndex) : run.topK();
+    }
+
+    /**
+     One execution of the query: reads task fields from the status table when it matches the list
+     and counts printed tasks of the page
+     */
+    private class Run {
+        private final List<JSONObject> m_JSONObjects;
+        private final TaskIndexes m_indexes;
+        private final TaskTable m_table;
+        private final TaskPrinter m_printer;
+        private long m_afterKey;
+        private int m_printed;
+        private int m_skipped;
+        private int m_lastId = Integer.MIN_VALUE;
+
+        Run(List<JSONObject> JSONObjects, TaskIndexes indexes, TaskPrinter printer) throws TaskCommandException {
+            m_JSONObjects = JSONObjects;
+            m_indexes = indexes;
+            TaskTable table = indexes.getTable();
+            m_table = table != null && table.size() == JSONObjects.size() ? table : null;
+            m_printer = printer;
+            if(m_hasAfter && m_sort != SortKey.id){
+                int index = TaskJournal.insertionIndex(m_after, JSONObjects);
+                if(index < 0){
+                    throw new TaskCommandException(String.format(
+                            "Task ID: %d from --after doesn't exist, list sorted by %s can't continue after it", m_after, m_sort));
+                }
+                m_afterKey = sortKey(index);
+            }
+        }
+
+        int[] select(){
+            int[] selected = new int[16];
+            int size = 0;
+            int start = lowerBound(m_idFrom);
+            int end = lowerBound((long) m_idTo + 1);
+            boolean useStatusBits = m_idList == null && m_status != null && m_table != null;
+            int id = useStatusBits ? m_table.nextIdWithStatus(m_status, Math.max(m_idFrom, 0)) : -1;
+            int listPosition = 0;
+            for(int i = start; ; i++){
+                int index = i;
+                if(m_idList != null){
+                    // few listed ids are looked up with binary search instead of scanning the range
+                    if(listPosition == m_idList.length){
+                        break;
+                    }
+                    index = TaskJournal.insertionIndex(m_idList[listPosition++], m_JSONObjects);
+                } else if(useStatusBits){
+                    if(id == -1 || id > m_idTo){
+                        break;
+                    }
+                    index = m_table.indexOf(id);
+                    id = id == Integer.MAX_VALUE ? -1 : m_table.nextIdWithStatus(m_status, id + 1);
+                } else if(i >= end){
+                    break;
+                }
+                if(index < 0 || !matches(index)){
+                    continue;
+                }
+                if(size == selected.length){
+                    selected = Arrays.copyOf(selected, size * 2);
+                }
+                selected[size++] = index;
+            }
+            return Arrays.copyOf(selected, size);
+        }
+
+        /**
+         Tasks in id order between id bounds
+         */
+        int byId() throws IOException {
+            long from = m_idFrom;
+            long to = m_idTo;
+            if(m_hasAfter){
+                if(m_descending){
+                    to = Math.min(to, (long) m_after - 1);
+                } else {
+                    from = Math.max(from, (long) m_after + 1);
+                }
+            }
+            if(from > to){
+                return Integer.MIN_VALUE;
+            }
+            int start = lowerBound(from);
+            int end = lowerBound(to + 1);
+
+            int[] narrowRange = narrowTimeRange(start, end);
+            if(narrowRange != null){
+                for(int i = 0; i < narrowRange.length; i++){
+                    int index = narrowRange[m_descending ? narrowRange.length - 1 - i : i];
+                    if(matches(index) && !emit(index)){
+                        return m_lastId;
+                    }
+                }
+                return Integer.MIN_VALUE;
+            }
+            if(m_idList == null && m_status != null && m_table != null && !m_descending){
+                for(int id = m_table.nextIdWithStatus(m_status, (int) Math.max(from, 0)); id != -1 && id <= to;
+                    id = id == Integer.MAX_VALUE ? -1 : m_table.nextIdWithStatus(m_status, id + 1)){
+                    int index = m_table.indexOf(id);
+                    if(index >= 0 && matches(index) && !emit(index)){
+                        return m_lastId;
+                    }
+                }
+                return Integer.MIN_VALUE;
+            }
+            for(int i = start; i < end; i++){
+                int index = m_descending ? end - 1 - (i - start) : i;
+                if(matches(index) && !emit(index)){
+                    return m_lastId;
+                }
+            }
+            return Integer.MIN_VALUE;
+        }
+
+        /**
+         @return sorted list indexes inside start..end from a built time index when its range
+         is narrow enough to beat the scan, null otherwise
+         */
+        private int[] narrowTimeRange(int start, int end){
+            int[] best = null;
+            for(boolean updated: new boolean[]{false, true}){
+                long from = updated ? m_updatedFrom : m_createdFrom;
+                long to = updated ? m_updatedTo : m_createdTo;
+                TaskTimeIndex timeIndex = m_indexes.getTimeIndex(updated);
+                if(timeIndex == null || from == Long.MIN_VALUE && to == Long.MAX_VALUE){
+                    continue;
+                }
+                int first = timeIndex.lowerBound(from);
+                int last = to == Long.MAX_VALUE ? timeIndex.size() : timeIndex.lowerBound(to);
+                int count = Math.max(last - first, 0);
+                if((long) count * NARROW_RANGE_DIVISOR > end - start || best != null && best.length <= count){
+                    continue;
+                }
+                int[] range = new int[count];
+                int size = 0;
+                for(int position = first; position < last; position++){
+                    int index = timeIndex.indexAt(position);
+                    if(index >= start && index < end){
+                        range[size++] = index;
+                    }
+                }
+                best = Arrays.copyOf(range, size);
+                Arrays.sort(best);
+            }
+            return best;
+        }
+
+        /**
+         Tasks in order of time index, starting from the time range of the sort field
+         */
+        int byTimeIndex(TaskTimeIndex timeIndex) throws IOException {
+            boolean updated = m_sort == SortKey.updated;
+            long from = updated ? m_updatedFrom : m_createdFrom;
+            long to = updated ? m_updatedTo : m_createdTo;
+            int first = timeIndex.lowerBound(from);
+            int last = to == Long.MAX_VALUE ? timeIndex.size() : timeIndex.lowerBound(to);
+            if(m_hasAfter){
+                if(m_descending){
+                    last = Math.min(last, m_afterKey == Long.MAX_VALUE ? timeIndex.size() : timeIndex.lowerBound(m_afterKey + 1));
+                } else {
+                    first = Math.max(first, timeIndex.lowerBound(m_afterKey));
+                }
+            }
+            for(int i = first; i < last; i++){
+                int index = timeIndex.indexAt(m_descending ? last - 1 - (i - first) : i);
+                if(matches(index) && isAfterCursor(index) && !emit(index)){
+                    return m_lastId;
+                }
+            }
+            return Integer.MIN_VALUE;
+        }
+
+        /**
+         Keeps first offset + limit + 1 matching tasks in sort order in a binary heap with the last of them
+         on top, then prints them in order. The extra task only tells if there is a next page
+         */
+        int topK() throws IOException {
+            int capacity = (int) Math.min((long) m_offset + m_limit + 1, m_JSONObjects.size());
+            long[] keys = new long[capacity];
+            int[] ids = new int[capacity];
+            int[] heap = new int[capacity];
+            int size = 0;
+
+            int start = lowerBound(m_idFrom);
+            int end = lowerBound((long) m_idTo + 1);
+            boolean useStatusBits = m_status != null && m_table != null;
+            int id = useStatusBits ? m_table.nextIdWithStatus(m_status, Math.max(m_idFrom, 0)) : -1;
+            for(int i = start; useStatusBits ? id != -1 && id <= m_idTo : i < end; i++){
+                int index = i;
+                if(useStatusBits){
+                    index = m_table.indexOf(id);
+                    id = id == Integer.MAX_VALUE ? -1 : m_table.nextIdWithStatus(m_status, id + 1);
+                    if(index < 0){
+                        continue;
+                    }
+                }
+                if(!matches(index) || !isAfterCursor(index)){
+                    continue;
+                }
+                long key = sortKey(index);
+                int taskId = id(index);
+                if(size < capacity){
+                    // sift up from the new leaf
+                    int position = size++;
+                    while(position > 0){
+                        int parent = (position - 1) >>> 1;
+                        if(!comesBefore(keys[parent], ids[parent], key, taskId)){
+                            break;
+                        }
+                        keys[position] = keys[parent];
+                        ids[position] = ids[parent];
+                        heap[position] = heap[parent];
+                        position = parent;
+                    }
+                    keys[position] = key;
+                    ids[position] = taskId;
+                    heap[position] = index;
+                } else if(capacity > 0 && comesBefore(key, taskId, keys[0], ids[0])){
+                    siftDown(keys, ids, heap, size, key, taskId, index);
+                }
+            }
+
+            // taking the top repeatedly gives tasks from the last one back
+            int[] ordered = new int[size];
+            for(int count = size; count > 0; count--){
+                ordered[count - 1] = heap[0];
+                int last = count - 1;
+                siftDown(keys, ids, heap, last, keys[last], ids[last], heap[last]);
+            }
+            for(int index: ordered){
+                if(!emit(index)){
+                    return m_lastId;
+                }
+            }
+            return Integer.MIN_VALUE;
+        }
+
+        /**
+         Puts task at the top of heap of given size and moves it down to its place
+         */
+        private void siftDown(long[] keys, int[] ids, int[] heap, int size, long key, int taskId, int index){
+            int position = 0;
+            while(true){
+                int child = 2 * position + 1;
+                if(child >= size){
+                    break;
+                }
+                if(child + 1 < size && comesBefore(keys[child], ids[child], keys[child + 1], ids[child + 1])){
+                    child++;
+                }
+                if(!comesBefore(key, taskId, keys[child], ids[child])){
+                    break;
+                }
+                keys[position] = keys[child];
+                ids[position] = ids[child];
+                heap[position] = heap[child];
+                position = child;
+            }
+            if(size > 0){
+                keys[position] = key;
+                ids[position] = taskId;
+                heap[position] = index;
+            }
+        }
+
+        /**
+         @return true if task with first key and id goes before the second one in sort order
+         */
+        private boolean comesBefore(long key, int id, long otherKey, int otherId){
+            int comparison = key != otherKey ? Long.compare(key, otherKey) : Integer.compare(id, otherId);
+            return m_descending ? comparison > 0 : comparison < 0;
+        }
+
+        private boolean isAfterCursor(int index){
+            return !m_hasAfter || comesBefore(m_afterKey, m_after, sortKey(index), id(index));
+        }
+
+        private boolean matches(int index){
+            if(m_idFrom != Integer.MIN_VALUE || m_idTo != Integer.MAX_VALUE){
+                int id = id(index);
+                if(id < m_idFrom || id > m_idTo || m_idList != null && Arrays.binarySearch(m_idList, id) < 0){
+                    return false;
+                }
+            }
+            if(m_status != null && status(index) != m_status){
+                return false;
+            }
+            if(m_createdFrom != Long.MIN_VALUE || m_createdTo != Long.MAX_VALUE){
+                long createdAt = createdAt(index);
+                if(createdAt < m_createdFrom || createdAt >= m_createdTo){
+                    return false;
+                }
+            }
+            if(m_updatedFrom != Long.MIN_VALUE || m_updatedTo != Long.MAX_VALUE){
+                long updatedAt = updatedAt(index);
+                return updatedAt >= m_updatedFrom && updatedAt < m_updatedTo;
+            }
+            return true;
+        }
+
+        /**
+         Prints matching task unless it is skipped by offset
+         @return false if the page is already full, the task is left for the next page
+         */
+        private boolean emit(int index) throws IOException {
+            if(m_printed == m_limit){
+                return false;
+            }
+            if(m_skipped < m_offset){
+                m_skipped++;
+                return true;
+            }
+            m_printer.print(m_JSONObjects.get(index));
+            m_lastId = id(index);
+            m_printed++;
+            return true;
+        }
+
+        /**
+         @return index of the first task with id not less than given id
+         */
+        private int lowerBound(long id){
+            if(id > Integer.MAX_VALUE){
+                return m_JSONObjects.size();
+            }
+            if(id <= Integer.MIN_VALUE){
+                return 0;
+            }
+            int index = TaskJournal.insertionIndex((int) id, m_JSONObjects);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        private long sortKey(int index){
+            return switch(m_sort){
+                case id -> id(index);
+                case created -> createdAt(index);
+                case updated -> updatedAt(index);
+            };
+        }
+
+        private int id(int index){
+            return m_table != null ? m_table.idAt(index) : TaskTracker.idAt(m_JSONObjects, index);
+        }
+
+        private TaskStatus status(int index){
+            return m_table != null ? m_table.statusAt(index) : m_JSONObjects.get(index).getStatus();
+        }
+
+        private long createdAt(int index){
+            return m_table != null ? m_table.createdAtMilli(index) : MappedTaskList.toEpochMilli(m_JSONObjects.get(index).getCreatedAt());
+        }
+
+        private long updatedAt(int index){
+            return m_table != null ? m_table.updatedAtMilli(index) : MappedTaskList.toEpochMilli(m_JSONObjects.get(index).getUpdatedAt());
+        }
+    }
+}
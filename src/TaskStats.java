@@ -0,0 +1,302 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import jdk.jfr.FlightRecorder;
+
+/**
+ Per-phase instrumentation of one command: wall time, bytes read and written, bytes allocated by the command thread
+ and number of tasks. Enabled by --stats (or --stats=file) argument, TASKS_STATS environment variable or
+ tasks.stats system property: "1" or "stderr" prints one JSON line to standard error after the command,
+ anything else is a file the line is appended to.
+ Bytes read and written are counted by the kernel for read and write calls (/proc/self/io, Linux only),
+ pages of memory-mapped files aren't included. Allocated bytes come from ThreadMXBean, so work done on
+ other threads (parallel segment load of sharded storage) isn't included, on virtual threads of the daemon
+ it isn't known (-1). Daemon writes stats of commands it runs where its own TASKS_STATS says.
+ Every phase is a JDK Flight Recorder event (TaskPhaseEvent) as well, committed only while a recording is on.
+ Without --stats and recording a phase costs one check
+ */
+public class TaskStats {
+    private static final String ARGUMENT = "--stats";
+    private static final String PROC_IO = "/proc/self/io";
+    private static final ThreadLocal<TaskStats> CURRENT = new ThreadLocal<TaskStats>();
+    private static final Phase NO_PHASE = new Phase(null, null, null);
+
+    private final String m_command;
+    private final String m_target;
+    private final com.sun.management.ThreadMXBean m_threads;
+    // kept open and read into the same buffer, so sampling doesn't allocate much itself
+    private RandomAccessFile m_procIo;
+    private final byte[] m_ioBuffer = new byte[512];
+    private final long[] m_start;
+    private final List<String> m_phaseNames = new ArrayList<String>();
+    private final List<long[]> m_phaseStarts = new ArrayList<long[]>();
+    private final List<long[]> m_phaseEnds = new ArrayList<long[]>();
+    private int m_tasks;
+
+    private TaskStats(String command, String target){
+        m_command = command;
+        m_target = target;
+        m_threads = target != null ? (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean() : null;
+        if(target != null){
+            try{
+                m_procIo = new RandomAccessFile(PROC_IO, "r");
+            } catch (IOException ignored){
+                // not Linux, I/O isn't counted
+            }
+        }
+        m_start = target != null ? sample() : null;
+    }
+
+    /**
+     @return where stats go from --stats argument or configuration ("stderr" or file path), null if they are off
+     */
+    static String target(String[] args){
+        for(int i = 0; i < args.length; i++){
+            if(isArgument(args, i)){
+                return args[i].equals(ARGUMENT) ? "stderr" : args[i].substring(ARGUMENT.length() + 1);
+            }
+        }
+        return configuredTarget();
+    }
+
+    /**
+     @return where stats go from TASKS_STATS variable or tasks.stats property, null if they are off
+     */
+    static String configuredTarget(){
+        String configured = System.getProperty("tasks.stats", System.getenv("TASKS_STATS"));
+        if(configured == null || configured.isEmpty() || configured.equals("0")){
+            return null;
+        }
+        return configured.equals("1") ? "stderr" : configured;
+    }
+
+    /**
+     @return arguments without --stats
+     */
+    static String[] withoutArgument(String[] args){
+        List<String> arguments = new ArrayList<String>(args.length);
+        for(int i = 0; i < args.length; i++){
+            if(!isArgument(args, i)){
+                arguments.add(args[i]);
+            }
+        }
+        return arguments.toArray(new String[0]);
+    }
+
+    /**
+     @return true if argument at the index is --stats or --stats=file,
+     description of add or update that reads the same is left to the command ("add --stats" adds task "--stats")
+     */
+    private static boolean isArgument(String[] args, int index){
+        String arg = args[index];
+        if(!arg.equals(ARGUMENT) && !arg.startsWith(ARGUMENT + "=")){
+            return false;
+        }
+        int descriptionIndex = switch(args[0]){
+            case "add" -> 1;
+            case "update" -> 2;
+            default -> -1;
+        };
+        return index != descriptionIndex;
+    }
+
+    /**
+     Starts stats of command run by the current thread, phases started by this thread belong to it until finish
+     @param target "stderr", file path or null to only name the command in JFR events
+     */
+    static TaskStats start(String command, String target){
+        TaskStats stats = new TaskStats(command, target);
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    /**
+     Starts phase of the current command, use it with try-with-resources.
+     Body of such try never refers to the phase, so classes that measure phases suppress "try" lint warning
+     javac reports at every one of them
+     */
+    static Phase phase(String name){
+        TaskStats stats = CURRENT.get();
+        boolean recording = stats != null && stats.m_target != null;
+        // loading event class starts up parts of JFR, that alone costs more than most commands, so it's
+        // touched only when flight recorder is already running (-XX:StartFlightRecording or jcmd JFR.start)
+        TaskPhaseEvent event = FlightRecorder.isInitialized() ? new TaskPhaseEvent() : null;
+        if(event != null && !event.isEnabled()){
+            event = null;
+        }
+        if(!recording && event == null){
+            return NO_PHASE;
+        }
+        if(event != null){
+            event.begin();
+        }
+        return new Phase(stats, name, event);
+    }
+
+    /**
+     Records number of tasks the current command works with
+     */
+    static void countTasks(int tasks){
+        TaskStats stats = CURRENT.get();
+        if(stats != null){
+            stats.m_tasks = tasks;
+        }
+    }
+
+    /**
+     Ends stats of the command and writes them if they are on
+     */
+    void finish(){
+        CURRENT.remove();
+        if(m_target == null){
+            return;
+        }
+        long[] total = sample();
+        if(m_procIo != null){
+            try{
+                m_procIo.close();
+            } catch (IOException ignored){
+            }
+        }
+        StringBuilder line = new StringBuilder(256);
+        line.append("{\"command\":");
+        appendString(line, m_command);
+        line.append(",\"tasks\":").append(m_tasks);
+        appendValues(line, m_start, total);
+        line.append(",\"phases\":[");
+        for(int i = 0; i < m_phaseNames.size(); i++){
+            if(i != 0){
+                line.append(',');
+            }
+            line.append("{\"phase\":");
+            appendString(line, m_phaseNames.get(i));
+            appendValues(line, m_phaseStarts.get(i), m_phaseEnds.get(i));
+            line.append('}');
+        }
+        line.append("]}\n");
+
+        if(m_target.equals("stderr")){
+            System.err.print(line);
+            System.err.flush();
+            return;
+        }
+        try{
+            Files.writeString(Path.of(m_target), line, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e){
+            System.err.println("Uh-oh IOException: couldn't write stats to " + m_target + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     Appends wall time, allocation and I/O between two samples, -1 means the value isn't known
+     */
+    private static void appendValues(StringBuilder line, long[] start, long[] end){
+        if(end == null){
+            // phase was left by exception that finished the command
+            line.append(",\"open\":true");
+            return;
+        }
+        line.append(",\"wallMs\":").append(String.format(Locale.ROOT, "%.3f", (end[0] - start[0]) / 1e6));
+        line.append(",\"allocatedBytes\":").append(difference(start[1], end[1]));
+        line.append(",\"bytesRead\":").append(difference(start[2], end[2]));
+        line.append(",\"bytesWritten\":").append(difference(start[3], end[3]));
+    }
+
+    private static long difference(long start, long end){
+        return start < 0 || end < 0 ? -1 : end - start;
+    }
+
+    private static void appendString(StringBuilder line, String value){
+        line.append('"');
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\'){
+                line.append('\\').append(c);
+            } else if(c < 0x20){
+                line.append(String.format("\\u%04x", (int) c));
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     @return nano time, allocated bytes of this thread, bytes read and written by the process
+     */
+    private long[] sample(){
+        long[] values = {System.nanoTime(), m_threads.getCurrentThreadAllocatedBytes(), -1, -1};
+        if(m_procIo == null){
+            return values;
+        }
+        try{
+            m_procIo.seek(0);
+            int length = m_procIo.read(m_ioBuffer);
+            // lines look like "rchar: 123", rchar and wchar are the first two of them
+            int line = 0;
+            long value = 0;
+            for(int i = 0; i < length && line < 2; i++){
+                byte b = m_ioBuffer[i];
+                if(b >= '0' && b <= '9'){
+                    value = value * 10 + (b - '0');
+                } else if(b == '\n'){
+                    values[2 + line++] = value;
+                    value = 0;
+                }
+            }
+        } catch (IOException ignored){
+            values[2] = -1;
+            values[3] = -1;
+        }
+        return values;
+    }
+
+    /**
+     Running phase, closing it records the phase and commits its JFR event
+     */
+    static class Phase implements AutoCloseable {
+        private final TaskStats m_stats;
+        private final TaskPhaseEvent m_event;
+        private final int m_position;
+
+        private Phase(TaskStats stats, String name, TaskPhaseEvent event){
+            m_stats = stats;
+            m_event = event;
+            if(stats != null && stats.m_target != null){
+                // phases are listed in order they start, so outer phase comes before phases inside it
+                m_position = stats.m_phaseNames.size();
+                stats.m_phaseNames.add(name);
+                stats.m_phaseStarts.add(stats.sample());
+                stats.m_phaseEnds.add(null);
+            } else {
+                m_position = -1;
+            }
+            if(event != null){
+                event.command = stats != null ? stats.m_command : "";
+                event.phase = name;
+            }
+        }
+
+        @Override
+        public void close() {
+            if(m_position >= 0){
+                m_stats.m_phaseEnds.set(m_position, m_stats.sample());
+            }
+            if(m_event != null){
+                m_event.end();
+                if(m_event.shouldCommit()){
+                    m_event.tasks = m_stats != null ? m_stats.m_tasks : 0;
+                    m_event.commit();
+                }
+            }
+        }
+    }
+}
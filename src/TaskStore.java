@@ -0,0 +1,38 @@
+import java.io.IOException;
+import java.util.List;
+
+/**
+ Storage backend that loads task list before the command and persists it after
+ */
+public interface TaskStore {
+    /**
+     Loads every task sorted by id
+     @return list of tasks, empty list if storage doesn't exist yet
+     @throws JSONParseException if stored data is malformed
+     */
+    List<JSONObject> load() throws IOException, JSONParseException;
+
+    /**
+     @return listener that task handlers notify about changes they make, so save can persist only them
+     */
+    TaskChangeListener changes();
+
+    /**
+     Persists changes reported through changes() since load
+     @param JSONObjects list returned by load with command changes applied
+     */
+    void save(List<JSONObject> JSONObjects) throws IOException;
+
+    /**
+     Replaces whole storage contents with given list, used to convert between storages
+     @param JSONObjects list sorted by id
+     */
+    void saveAll(List<JSONObject> JSONObjects) throws IOException;
+
+    /**
+     Waits for saving work the storage continues in background after save returned,
+     storage files must not be handed to another process before it finishes
+     */
+    default void awaitBackgroundSave() throws IOException {
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ Struct-of-arrays copy of task list fields: ids, status codes and timestamps (epoch millis, UTC)
+ kept in primitive arrays, about 21 bytes per task instead of JSONObject with boxed Integer and
+ two LocalDateTime objects. Every status has a bitset of ids with that status, so filtered listing
+ walks only matching ids. Table is kept up to date by registering it as TaskChangeListener.
+ Table is an index next to the task list, the list still holds JSONObject objects of every task it loaded:
+ memory per task drops only for mapped binary storage, which builds the table without loading tasks.
+ Ids must not be negative, see build
+ */
+public class TaskTable implements TaskChangeListener {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] m_ids;
+    private byte[] m_statuses;
+    private long[] m_createdAt;
+    private long[] m_updatedAt;
+    private int m_size;
+    private final BitSet[] m_statusIds = new BitSet[TaskStatus.values().length];
+
+    private TaskTable(int capacity){
+        capacity = Math.max(capacity, INITIAL_CAPACITY);
+        m_ids = new int[capacity];
+        m_statuses = new byte[capacity];
+        m_createdAt = new long[capacity];
+        m_updatedAt = new long[capacity];
+        for(int i = 0; i < m_statusIds.length; i++){
+            m_statusIds[i] = new BitSet();
+        }
+    }
+
+    /**
+     Builds table from list sorted by id, mapped lists are read straight from their columns
+     without creating JSONObject objects
+     @return table or null if list has negative ids, which can't be kept in bitsets
+     */
+    public static TaskTable build(List<JSONObject> JSONObjects){
+        int size = JSONObjects.size();
+        TaskTable table = new TaskTable(size);
+        MappedTaskList mappedTasks = JSONObjects instanceof MappedTaskList mapped && !mapped.isMaterialized() ? mapped : null;
+        for(int i = 0; i < size; i++){
+            int id;
+            byte status;
+            long createdAt;
+            long updatedAt;
+            if(mappedTasks != null && i < mappedTasks.getMappedCount()){
+                id = mappedTasks.idAt(i);
+                status = mappedTasks.statusAt(i);
+                createdAt = mappedTasks.createdAtMilli(i);
+                updatedAt = mappedTasks.updatedAtMilli(i);
+            } else {
+                JSONObject task = JSONObjects.get(i);
+                id = task.getId();
+                status = (byte) task.getStatus().ordinal();
+                createdAt = MappedTaskList.toEpochMilli(task.getCreatedAt());
+                updatedAt = MappedTaskList.toEpochMilli(task.getUpdatedAt());
+            }
+            if(id < 0){
+                return null;
+            }
+            table.m_ids[i] = id;
+            table.m_statuses[i] = status;
+            table.m_createdAt[i] = createdAt;
+            table.m_updatedAt[i] = updatedAt;
+            table.m_statusIds[status].set(id);
+        }
+        table.m_size = size;
+        return table;
+    }
+
+    public int size(){
+        return m_size;
+    }
+
+    public int idAt(int index){
+        return m_ids[index];
+    }
+
+    public TaskStatus statusAt(int index){
+        return TaskStatus.values()[m_statuses[index]];
+    }
+
+    public long createdAtMilli(int index){
+        return m_createdAt[index];
+    }
+
+    public long updatedAtMilli(int index){
+        return m_updatedAt[index];
+    }
+
+    /**
+     @return smallest id not less than fromId of task with given status, or -1 if there is none
+     */
+    public int nextIdWithStatus(TaskStatus status, int fromId){
+        return m_statusIds[status.ordinal()].nextSetBit(fromId);
+    }
+
+    public int countWithStatus(TaskStatus status){
+        return m_statusIds[status.ordinal()].cardinality();
+    }
+
+    /**
+     Binary search over id column
+     @return index of task with given id or (-(insertion point) - 1) if there is no such task
+     */
+    public int indexOf(int id){
+        return Arrays.binarySearch(m_ids, 0, m_size, id);
+    }
+
+    @Override
+    public void taskAdded(JSONObject task) {
+        int index = indexOf(task.getId());
+        if(index >= 0 || task.getId() < 0){
+            return;
+        }
+        index = -index - 1;
+        ensureCapacity(m_size + 1);
+        int moved = m_size - index;
+        if(moved > 0){
+            System.arraycopy(m_ids, index, m_ids, index + 1, moved);
+            System.arraycopy(m_statuses, index, m_statuses, index + 1, moved);
+            System.arraycopy(m_createdAt, index, m_createdAt, index + 1, moved);
+            System.arraycopy(m_updatedAt, index, m_updatedAt, index + 1, moved);
+        }
+        m_size++;
+        m_ids[index] = task.getId();
+        m_statuses[index] = (byte) task.getStatus().ordinal();
+        m_createdAt[index] = MappedTaskList.toEpochMilli(task.getCreatedAt());
+        m_updatedAt[index] = MappedTaskList.toEpochMilli(task.getUpdatedAt());
+        m_statusIds[m_statuses[index]].set(task.getId());
+    }
+
+    @Override
+    public void taskUpdated(JSONObject task) {
+        int index = indexOf(task.getId());
+        if(index < 0){
+            return;
+        }
+        byte status = (byte) task.getStatus().ordinal();
+        if(m_statuses[index] != status){
+            m_statusIds[m_statuses[index]].clear(task.getId());
+            m_statusIds[status].set(task.getId());
+            m_statuses[index] = status;
+        }
+        m_updatedAt[index] = MappedTaskList.toEpochMilli(task.getUpdatedAt());
+    }
+
+    @Override
+    public void taskDeleted(int id) {
+        int index = indexOf(id);
+        if(index < 0){
+            return;
+        }
+        m_statusIds[m_statuses[index]].clear(id);
+        int moved = m_size - index - 1;
+        if(moved > 0){
+            System.arraycopy(m_ids, index + 1, m_ids, index, moved);
+            System.arraycopy(m_statuses, index + 1, m_statuses, index, moved);
+            System.arraycopy(m_createdAt, index + 1, m_createdAt, index, moved);
+            System.arraycopy(m_updatedAt, index + 1, m_updatedAt, index, moved);
+        }
+        m_size--;
+    }
+
+    /**
+     Removes every given id in one compaction pass over the columns
+     */
+    @Override
+    public void tasksDeleted(int[] ids) {
+        int write = 0;
+        int next = 0;
+        for(int read = 0; read < m_size; read++){
+            int id = m_ids[read];
+            while(next < ids.length && ids[next] < id){
+                next++;
+            }
+            if(next < ids.length && ids[next] == id){
+                m_statusIds[m_statuses[read]].clear(id);
+                continue;
+            }
+            m_ids[write] = id;
+            m_statuses[write] = m_statuses[read];
+            m_createdAt[write] = m_createdAt[read];
+            m_updatedAt[write] = m_updatedAt[read];
+            write++;
+        }
+        m_size = write;
+    }
+
+    private void ensureCapacity(int capacity){
+        if(capacity <= m_ids.length){
+            return;
+        }
+        int newCapacity = Math.max(capacity, m_ids.length + (m_ids.length >> 1));
+        m_ids = Arrays.copyOf(m_ids, newCapacity);
+        m_statuses = Arrays.copyOf(m_statuses, newCapacity);
+        m_createdAt = Arrays.copyOf(m_createdAt, newCapacity);
+        m_updatedAt = Arrays.copyOf(m_updatedAt, newCapacity);
+    }
+}
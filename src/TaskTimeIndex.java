@@ -0,0 +1,112 @@
+import java.util.List;
+
+/**
+ Sorted index over createdAt or updatedAt of the task list: list indexes ordered by timestamp
+ (epoch millis, UTC), ties in id order. Time ranges are found with binary search and
+ time-ordered pages are read by walking the index, without sorting tasks for every query.
+ List indexes shift when tasks are added or deleted, so TaskIndexes drops the index on such change
+ */
+public class TaskTimeIndex {
+    private final int[] m_order;
+    private final long[] m_millis;
+
+    private TaskTimeIndex(int[] order, long[] millis){
+        m_order = order;
+        m_millis = millis;
+    }
+
+    /**
+     Builds index from list sorted by id, timestamps are read from the table columns when table is given
+     @param table table of the same list or null
+     @param updated true to order by updatedAt, false to order by createdAt
+     */
+    public static TaskTimeIndex build(List<JSONObject> JSONObjects, TaskTable table, boolean updated){
+        int size = JSONObjects.size();
+        long[] keys = new long[size];
+        for(int i = 0; i < size; i++){
+            if(table != null){
+                keys[i] = updated ? table.updatedAtMilli(i) : table.createdAtMilli(i);
+            } else {
+                JSONObject task = JSONObjects.get(i);
+                keys[i] = MappedTaskList.toEpochMilli(updated ? task.getUpdatedAt() : task.getCreatedAt());
+            }
+        }
+        int[] order = new int[size];
+        for(int i = 0; i < size; i++){
+            order[i] = i;
+        }
+        // merge sort is stable, list is in id order, so tasks with the same timestamp stay in id order
+        sort(order, new int[size], keys, 0, size);
+        long[] millis = new long[size];
+        for(int i = 0; i < size; i++){
+            millis[i] = keys[order[i]];
+        }
+        return new TaskTimeIndex(order, millis);
+    }
+
+    /**
+     Sorts list indexes from start to end (exclusive) by their keys
+     */
+    private static void sort(int[] order, int[] buffer, long[] keys, int start, int end){
+        if(end - start < 16){
+            for(int i = start + 1; i < end; i++){
+                int index = order[i];
+                int j = i - 1;
+                while(j >= start && keys[order[j]] > keys[index]){
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = index;
+            }
+            return;
+        }
+        int middle = (start + end) >>> 1;
+        sort(order, buffer, keys, start, middle);
+        sort(order, buffer, keys, middle, end);
+        if(keys[order[middle - 1]] <= keys[order[middle]]){
+            return;
+        }
+        System.arraycopy(order, start, buffer, start, end - start);
+        int left = start;
+        int right = middle;
+        for(int i = start; i < end; i++){
+            if(right >= end || left < middle && keys[buffer[left]] <= keys[buffer[right]]){
+                order[i] = buffer[left++];
+            } else {
+                order[i] = buffer[right++];
+            }
+        }
+    }
+
+    public int size(){
+        return m_order.length;
+    }
+
+    /**
+     @return list index of the task at given position of the index
+     */
+    public int indexAt(int position){
+        return m_order[position];
+    }
+
+    public long millisAt(int position){
+        return m_millis[position];
+    }
+
+    /**
+     @return first position with timestamp not less than given millis, size if there is none
+     */
+    public int lowerBound(long millis){
+        int firstIndex = 0;
+        int lastIndex = m_millis.length;
+        while(firstIndex < lastIndex){
+            int midIndex = (firstIndex + lastIndex) >>> 1;
+            if(m_millis[midIndex] < millis){
+                firstIndex = midIndex + 1;
+            } else {
+                lastIndex = midIndex;
+            }
+        }
+        return firstIndex;
+    }
+}
@@ -1,154 +1,534 @@
-import java.io.FileWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.nio.file.Files;
+import java.io.PrintStream;
 import java.nio.file.Path;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.FormatStyle;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
+@SuppressWarnings("try")
 public class TaskTracker {
+    // done tasks not updated for this long are archived when archive command gets no time filter
+    private static final String DEFAULT_ARCHIVE_AGE = "30d";
+
     public static void main(String[] args) {
+        int exitCode = execute(args);
+        if(exitCode != 0){
+            System.exit(exitCode);
+        }
+    }
+
+    /**
+     Runs command line the way main does without exiting, so it can be called many times in one process
+     (workload replay in bench module)
+     @return exit code
+     */
+    static int execute(String[] args){
+        String statsTarget = TaskStats.target(args);
+        args = TaskStats.withoutArgument(args);
         if(args.length < 1){
-            helpPrint();
-            return;
+            helpPrint(System.out);
+            return 0;
         }
 
+        TaskStats stats = TaskStats.start(args[0], statsTarget);
+        try{
+            return run(args);
+        } finally {
+            stats.finish();
+        }
+    }
+
+    /**
+     Runs command given to main
+     @return exit code
+     */
+    private static int run(String[] args) {
         String firstArg = args[0];
         if (Objects.equals(firstArg, "--help") || Objects.equals(firstArg, "-h") || Objects.equals(firstArg, "help")){
             if (args.length == 2) {
-                helpPrint(args[1]);
+                helpPrint(System.out, args[1]);
             } else {
-                helpPrint();
+                helpPrint(System.out);
+            }
+            return 0;
+        }
+
+        if(Objects.equals(firstArg, "batch")){
+            return TaskBatch.run(args);
+        }
+
+        // list --watch keeps running in this process and reloads storage files when they change
+        if(Objects.equals(firstArg, "list") && Arrays.asList(args).contains(TaskWatch.ARGUMENT)){
+            return TaskWatch.run(args);
+        }
+
+        // export and import stream storage files themselves, daemon notices import by version of tasks.lock
+        if(Objects.equals(firstArg, "export") || Objects.equals(firstArg, "import")){
+            return TaskTransfer.run(args);
+        }
+
+        boolean serve = Objects.equals(firstArg, "serve");
+        if(!serve && TaskDaemon.isRunning()){
+            try(TaskStats.Phase phase = TaskStats.phase("forward")){
+                return TaskDaemon.forward(args);
+            } catch (IOException ignored){
+                // daemon isn't listening anymore and the command wasn't sent, run it in this process
             }
         }
 
-        Path jsonFilePath = Path.of("./tasks.json");
-        if(!Files.exists(jsonFilePath)){
-            try {
-                Files.createFile(jsonFilePath);
+        try(TaskLock lock = TaskLock.open(TaskLock.PATH)){
+            return serve ? serveLocked(lock) : runLocked(args, lock);
+        } catch (IOException e){
+            System.err.println("Uh-oh IOException: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     Loaded storage with indexes and output of one command run against it
+     */
+    private static class CommandRun {
+        final TaskStore store;
+        final List<JSONObject> JSONObjects;
+        final TaskIndexes indexes = new TaskIndexes();
+        final DirtyTracker changes;
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TaskCommandException error;
+
+        private CommandRun(TaskStore store, List<JSONObject> JSONObjects){
+            this.store = store;
+            this.JSONObjects = JSONObjects;
+            changes = new DirtyTracker(store.changes().andThen(indexes));
+        }
+
+        /**
+         Opens storage from TASKS_STORAGE and loads it with indexes the command needs
+         @param args command line arguments of the command
+         @return loaded run or null if storage couldn't be loaded, error is printed then
+         */
+        static CommandRun load(String[] args){
+            String command = args[0];
+            TaskStore store = openStore(storageName());
+            if(store == null){
+                return null;
+            }
+            if(store instanceof JSONTaskStore jsonStore && changesSingleTask(args)){
+                jsonStore.setIndexedLoad(true);
+            }
+            List<JSONObject> JSONObjects = loadFromStore(store);
+            if(JSONObjects == null){
+                return null;
+            }
+            CommandRun run = new CommandRun(store, JSONObjects);
+            // mapped list gives status column without creating objects, so the table is cheap to build
+            if(JSONObjects instanceof MappedTaskList){
+                run.indexes.setTable(TaskTable.build(JSONObjects));
+            }
+            try{
+                if(changesDescriptions(command)){
+                    run.indexes.loadSearchIfSaved(JSONObjects);
+                }
             } catch (IOException e){
                 System.err.println("Uh-oh IOException: " + e.getMessage());
+                return null;
             }
+            return run;
         }
-        String JSONString;
+
+        /**
+         Runs command keeping its output until printOutput, so command that is run again
+         after losing race to another process doesn't print twice
+         */
+        void execute(String[] args){
+            try(TaskStats.Phase phase = TaskStats.phase("command")){
+                runCommand(args, JSONObjects, indexes, changes, new PrintStream(output, true));
+            } catch (TaskCommandException e){
+                error = e;
+            }
+        }
+
+        /**
+         @return exit code of the command
+         */
+        int printOutput(){
+            try(TaskStats.Phase phase = TaskStats.phase("output")){
+                System.out.write(output.toByteArray(), 0, output.size());
+                System.out.flush();
+            }
+            if(error != null){
+                System.err.println(error.getMessage());
+                return 1;
+            }
+            return 0;
+        }
+    }
+
+    /**
+     Runs one command in this process. Reading commands run and save rebuilt indexes under shared lock.
+     Commands that change tasks load and run under shared lock as well, then take exclusive lock to save;
+     if another process saved in between (version in tasks.lock changed) storage is loaded again
+     and the command is run once more against fresh tasks while holding exclusive lock, so no change gets lost
+     @return exit code
+     */
+    private static int runLocked(String[] args, TaskLock lock) throws IOException {
+        String command = args[0];
+        if(!needsExclusiveLock(command)){
+            lockShared(lock);
+            CommandRun run = CommandRun.load(args);
+            if(run == null){
+                return 1;
+            }
+            try{
+                try(TaskStats.Phase phase = TaskStats.phase("command")){
+                    // list output can be large, so it is printed while the lock is held instead of being kept
+                    runCommand(args, run.JSONObjects, run.indexes, run.changes, System.out);
+                }
+                // indexes describe the loaded tasks, after the lock is released a writer could save newer ones
+                // and index renamed after that would look fresh for them
+                saveIndexes(run.indexes);
+            } catch (TaskCommandException e){
+                System.err.println(e.getMessage());
+                return 1;
+            } finally {
+                lock.release();
+            }
+            return 0;
+        }
+
+        // convert and archive write files outside of the storage while they run, so they can't run optimistically
+        boolean convert = command.equals("convert");
+        boolean optimistic = !convert && !command.equals("archive");
+        if(!optimistic){
+            lockExclusive(lock);
+        } else {
+            lockShared(lock);
+        }
+        long version = lock.readVersion();
+        CommandRun run = CommandRun.load(args);
+        if(run == null){
+            return 1;
+        }
+        if(optimistic){
+            lock.release();
+        }
+        run.execute(args);
+
+        lockExclusive(lock);
         try{
-             JSONString = Files.readString(jsonFilePath);
-        } catch (IOException e){
-            System.err.println("Uh-oh IOException: " + e.getMessage());
-            return;
+            if(lock.readVersion() != version){
+                // another process saved tasks after they were loaded, saving now would overwrite its changes
+                run = CommandRun.load(args);
+                if(run == null){
+                    return 1;
+                }
+                run.execute(args);
+            }
+            if(run.changes.isDirty() && !(run.JSONObjects instanceof IndexedTaskList)){
+                archiveAutomatically(run.JSONObjects, run.indexes, run.changes);
+            }
+            if(run.changes.isDirty()){
+                run.indexes.deleteStaleSearch(changesDescriptions(command));
+            }
+            if(run.changes.isDirty() && !saveToStore(run.store, run.JSONObjects)){
+                // storage may be written partly, other processes and the daemon have to load it again
+                lock.incrementVersion();
+                return 1;
+            }
+            if(run.changes.isDirty() || convert && run.error == null){
+                lock.incrementVersion();
+            }
+            saveIndexes(run.indexes);
+            int exitCode = run.printOutput();
+            try(TaskStats.Phase phase = TaskStats.phase("background-save")){
+                run.store.awaitBackgroundSave();
+            }
+            return exitCode;
+        } finally {
+            lock.release();
+        }
+    }
+
+    private static void lockShared(TaskLock lock) throws IOException {
+        try(TaskStats.Phase phase = TaskStats.phase("lock")){
+            lock.lockShared();
+        }
+    }
+
+    private static void lockExclusive(TaskLock lock) throws IOException {
+        try(TaskStats.Phase phase = TaskStats.phase("lock")){
+            lock.lockExclusive();
+        }
+    }
+
+    /**
+     Loads tasks under shared lock and serves them until the process is stopped
+     */
+    private static int serveLocked(TaskLock lock) throws IOException {
+        TaskStore store = openStore(storageName());
+        if(store == null){
+            return 1;
+        }
+        lock.lockShared();
+        long version = lock.readVersion();
+        List<JSONObject> JSONObjects = loadFromStore(store);
+        lock.release();
+        if(JSONObjects == null){
+            return 1;
+        }
+        new TaskDaemon(store, JSONObjects, lock, version).serve();
+        return 0;
+    }
+
+    /**
+     @return true for commands that write to any storage, they have to hold exclusive lock while saving
+     */
+    static boolean needsExclusiveLock(String command){
+        return switch(command){
+            case "add", "update", "delete", "mark-in-progress", "mark-done", "convert", "archive" -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     @return true for commands that find one task by id and change it,
+     bulk forms of delete and mark-* (ranges, lists, filters) change many tasks
+     */
+    private static boolean changesSingleTask(String[] args){
+        return switch(args[0]){
+            case "update" -> true;
+            case "delete", "mark-in-progress", "mark-done" -> isSingleTask(args);
+            default -> false;
+        };
+    }
+
+    /**
+     @return true if the only argument of the command is one task ID
+     */
+    private static boolean isSingleTask(String[] args){
+        return args.length == 2 && args[1].matches("-?\\d+");
+    }
+
+    /**
+     @return true for commands that add, change or remove task descriptions
+     */
+    static boolean changesDescriptions(String command){
+        return switch(command){
+            case "add", "update", "delete" -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     Persists changed indexes, failing to save them isn't fatal as they are rebuilt when stale
+     */
+    static void saveIndexes(TaskIndexes indexes){
+        try(TaskStats.Phase phase = TaskStats.phase("indexes")){
+            indexes.save();
+        } catch (IOException err){
+            System.err.println("Couldn't save search index: " + err.getMessage());
         }
-        List<JSONObject> JSONObjects = parseJSON(JSONString);
+    }
 
-        switch(firstArg){
+    /**
+     Runs command given in args against task list
+     @param args command line arguments, first one is the command
+     @param JSONObjects task list to run command against
+     @param indexes indexes of the same list, they have to be notified through changes
+     @param changes listener to notify about every change of task list
+     @param out stream to print command output to
+     @throws TaskCommandException if command can't be executed, nothing is changed in that case
+     */
+    static void runCommand(String[] args, List<JSONObject> JSONObjects, TaskIndexes indexes, TaskChangeListener changes,
+                           PrintStream out) throws TaskCommandException {
+        switch(args[0]){
             case "add":
-                addTask(args, JSONObjects);
+                addTask(args, JSONObjects, changes, out);
                 break;
             case "update":
-                updateTask(args, JSONObjects);
+                updateTask(args, JSONObjects, changes, out);
                 break;
             case "delete":
-                deleteTask(args, JSONObjects);
+                deleteTask(args, JSONObjects, indexes, changes, out);
                 break;
             case "mark-in-progress":
-                markInProgress(args, JSONObjects);
+                markInProgress(args, JSONObjects, indexes, changes, out);
                 break;
             case "mark-done":
-                markDone(args, JSONObjects);
+                markDone(args, JSONObjects, indexes, changes, out);
                 break;
             case "list":
-                listTasks(args, JSONObjects);
+                listTasks(args, JSONObjects, indexes, out);
+                break;
+            case "search":
+                searchTasks(args, JSONObjects, indexes, out);
+                break;
+            case "convert":
+                convertStore(args, JSONObjects, out);
+                break;
+            case "archive":
+                archiveTasks(args, JSONObjects, indexes, changes, out);
                 break;
             default:
-                helpPrint();
+                helpPrint(out);
         }
-        saveToJSON(jsonFilePath, JSONObjects);
     }
 
     /**
-     Saves list of given JSONObject objects by writing them to a file in JSON format
-     @param saveToPath path to file to which the JSON object will be written
-     @param JSONObjects list to get objects to write
+     @return storage name from tasks.storage system property or TASKS_STORAGE environment variable, null if neither is set
      */
-    private static void saveToJSON(Path saveToPath, List<JSONObject> JSONObjects) {
-        try{
-            FileWriter fileWriter = new FileWriter(String.valueOf(saveToPath));
-            PrintWriter writer = new PrintWriter(fileWriter);
-            writeJSON(JSONObjects, writer);
-            fileWriter.close();
-        } catch (IOException err){
-            System.out.println("Error: There seems to be the problem with tasks.json. Closing...");
-            System.exit(1);
+    static String storageName(){
+        return System.getProperty("tasks.storage", System.getenv("TASKS_STORAGE"));
+    }
+
+    /**
+     Creates storage by its name, see README for the list of storages
+     @param storageName name from TASKS_STORAGE environment variable, null means json
+     @return storage working in current directory or null if name is unknown
+     */
+    static TaskStore openStore(String storageName){
+        JSONTaskStore jsonStore = new JSONTaskStore(Path.of("./tasks.json"));
+        if(storageName == null){
+            return jsonStore;
+        }
+        switch(storageName){
+            case "json":
+                return jsonStore;
+            case "journal":
+                return new JournalTaskStore(jsonStore,
+                        new TaskJournal(Path.of("./tasks.journal"), journalCompactionThreshold()));
+            case "binary":
+                return new BinaryTaskStore(Path.of("./tasks.bin"));
+            case "sharded":
+                return new ShardedTaskStore(Path.of("./tasks.shards"), segmentSize());
+            default:
+                System.err.println("Unknown storage \"" + storageName + "\", use one of: json, journal, binary, sharded");
+                return null;
         }
     }
 
     /**
-     Writes JSON object with "task" as array of JSON objects in file
-     @param JSONObjects list to get objects to write
-     @param writer writer to write formatted strings in file
+     Loads task list from storage and prints out errors
+     @return loaded list or null if it couldn't be loaded
      */
-    private static void writeJSON(List<JSONObject> JSONObjects, PrintWriter writer) {
-        writer.write("""
-              {
-              \t"tasks": [
-                """);
-        writeJSONBody(JSONObjects, writer);
-        writer.write("""
-                \n\t]
-                }""");
-        writer.close();
+    static List<JSONObject> loadFromStore(TaskStore store){
+        try(TaskStats.Phase phase = TaskStats.phase("load")){
+            List<JSONObject> JSONObjects = store.load();
+            TaskStats.countTasks(JSONObjects.size());
+            return JSONObjects;
+        } catch (JSONParseException e){
+            System.err.println(e.getMessage());
+        } catch (IOException e){
+            System.err.println("Uh-oh IOException: " + e.getMessage());
+        }
+        return null;
     }
 
     /**
-     Writes JSON objects in file for each JSONObject object in JSONObjects list
-     @param JSONObjects list to get objects to write
-     @param writer writer to write formatted strings in file
+     Persists changes of the command to given storage, prints error if storage can't be written
+     @return false if saving failed, command has to end with error exit code then
      */
-    private static void writeJSONBody(List<JSONObject> JSONObjects, PrintWriter writer) {
-        for(JSONObject task: JSONObjects){
-            writer.printf("""
-                        \t\t{
-                        \t\t\t"id": "%d",
-                        \t\t\t"description": "%s",
-                        \t\t\t"status": "%d",
-                        \t\t\t"createdAt": "%s",
-                        \t\t\t"updatedAt": "%s"
-                        \t\t}"""
-                    , task.getId(),
-                    task.getDescription(),
-                    task.getStatus().ordinal(),
-                    task.getCreatedAt().toString(),
-                    task.getUpdatedAt().toString());
+    private static boolean saveToStore(TaskStore store, List<JSONObject> JSONObjects) {
+        try(TaskStats.Phase phase = TaskStats.phase("save")){
+            store.save(JSONObjects);
+            return true;
+        } catch (IOException err){
+            System.out.println("Error: There seems to be the problem with tasks storage (" + err.getMessage() + ")");
+            return false;
+        }
+    }
 
-            if(JSONObjects.indexOf(task) != JSONObjects.indexOf(JSONObjects.getLast())){
-                writer.write(",\n");
+    /**
+     Reads journal size after which it gets compacted from TASKS_JOURNAL_LIMIT environment variable
+     @return threshold in bytes, TaskJournal.DEFAULT_COMPACTION_THRESHOLD if variable isn't set or invalid
+     */
+    private static long journalCompactionThreshold(){
+        String limit = System.getenv("TASKS_JOURNAL_LIMIT");
+        if(limit == null){
+            return TaskJournal.DEFAULT_COMPACTION_THRESHOLD;
+        }
+        try {
+            return Long.parseLong(limit);
+        } catch (NumberFormatException ignored){
+            System.err.println("TASKS_JOURNAL_LIMIT is not a number, using default limit");
+            return TaskJournal.DEFAULT_COMPACTION_THRESHOLD;
+        }
+    }
+
+    /**
+     Reads number of ids one segment of sharded storage covers from TASKS_SEGMENT_SIZE environment variable,
+     it is used only when tasks.shards is created, existing storage keeps size from its manifest
+     @return segment size, ShardedTaskStore.DEFAULT_SEGMENT_SIZE if variable isn't set or invalid
+     */
+    private static int segmentSize(){
+        String size = System.getenv("TASKS_SEGMENT_SIZE");
+        if(size == null){
+            return ShardedTaskStore.DEFAULT_SEGMENT_SIZE;
+        }
+        try {
+            int segmentSize = Integer.parseInt(size);
+            if(segmentSize > 0){
+                return segmentSize;
             }
+        } catch (NumberFormatException ignored){
         }
+        System.err.println("TASKS_SEGMENT_SIZE is not a positive number, using default size");
+        return ShardedTaskStore.DEFAULT_SEGMENT_SIZE;
     }
 
-    private static void addTask(String[] args, List<JSONObject> JSONObjects) {
-        if(args.length != 2){helpPrint(args[0]); return;}
+    /**
+     Writes every task of current storage into another storage, replacing its contents
+     */
+    private static void convertStore(String[] args, List<JSONObject> JSONObjects, PrintStream out) throws TaskCommandException {
+        if(args.length != 2){helpPrint(out, args[0]); return;}
 
-        int id;
-        if(JSONObjects.isEmpty()){
-            id = 0;
-        } else {
-            id = JSONObjects.getLast().getId() + 1;
+        TaskStore target = openStore(args[1]);
+        if(target == null){
+            return;
+        }
+        try{
+            target.saveAll(JSONObjects);
+        } catch (IOException err){
+            throw new TaskCommandException("Uh-oh IOException: " + err.getMessage());
         }
+        out.printf("Converted %d tasks to %s storage\n", JSONObjects.size(), args[1]);
+    }
+
+    private static void addTask(String[] args, List<JSONObject> JSONObjects, TaskChangeListener changes, PrintStream out)
+            throws TaskCommandException {
+        if(args.length != 2){helpPrint(out, args[0]); return;}
+
+        int id = nextId(JSONObjects);
 
         String description = args[1];
 
         LocalDateTime createdAt = LocalDateTime.now();
 
-        JSONObjects.add(new JSONObject(id, description, TaskStatus.todo, createdAt, createdAt));
-        System.out.printf("Task \"%s\" added successfully(ID: %d)\n", description, id);
+        JSONObject task = new JSONObject(id, description, TaskStatus.todo, createdAt, createdAt);
+        JSONObjects.add(task);
+        changes.taskAdded(task);
+        out.printf("Task \"%s\" added successfully(ID: %d)\n", description, id);
     }
 
-    private static void updateTask(String[] args, List<JSONObject> JSONObjects) {
-        if(args.length != 3){helpPrint(args[0]); return;}
+    /**
+     New ids continue after the highest id of both stored and archived tasks,
+     so a new task never gets id of archived one, even when the highest stored task was deleted
+     @return id for the next added task
+     */
+    static int nextId(List<JSONObject> JSONObjects) throws TaskCommandException {
+        int last = JSONObjects.isEmpty() ? -1 : JSONObjects.getLast().getId();
+        try{
+            return Math.max(last, TaskArchive.open(TaskArchive.PATH).maxId()) + 1;
+        } catch (IOException e){
+            throw new TaskCommandException("Uh-oh IOException: couldn't read " + TaskArchive.PATH + ": " + e.getMessage());
+        }
+    }
+
+    private static void updateTask(String[] args, List<JSONObject> JSONObjects, TaskChangeListener changes, PrintStream out)
+            throws TaskCommandException {
+        if(args.length != 3){helpPrint(out, args[0]); return;}
 
         int id = parseID(args[1]);
 
@@ -162,21 +542,44 @@ public class TaskTracker {
         updatedObject.setDescription(newDescription);
 
         updateTime(updatedObject);
-        System.out.printf("Task ID: %d \"%s\" updated to \"%s\" successfully\n", id, oldDescription, newDescription);
+        changes.taskUpdated(updatedObject);
+        out.printf("Task ID: %d \"%s\" updated to \"%s\" successfully\n", id, oldDescription, newDescription);
     }
 
-    private static void deleteTask(String[] args, List<JSONObject> JSONObjects) {
-        if(args.length != 2){helpPrint(args[0]); return;}
+    private static void deleteTask(String[] args, List<JSONObject> JSONObjects, TaskIndexes indexes, TaskChangeListener changes,
+                                   PrintStream out) throws TaskCommandException {
+        if(!isSingleTask(args)){
+            TaskQuery query = parseBulkSelection(args, out);
+            if(query == null){
+                return;
+            }
+            int[] selected = query.select(JSONObjects, indexes);
+            int[] ids = new int[selected.length];
+            for(int i = 0; i < selected.length; i++){
+                ids[i] = idAt(JSONObjects, selected[i]);
+            }
+            removeIndexes(JSONObjects, selected);
+            if(ids.length > 0){
+                changes.tasksDeleted(ids);
+            }
+            out.printf("Deleted %d tasks\n", ids.length);
+            return;
+        }
 
         int id = parseID(args[1]);
         int objectIndex = indexValidator(id, JSONObjects);
         String taskDescription = JSONObjects.get(objectIndex).getDescription();
         JSONObjects.remove(objectIndex);
-        System.out.printf("Task ID: %d \"%s\" deleted successfully\n", id, taskDescription);
+        changes.taskDeleted(id);
+        out.printf("Task ID: %d \"%s\" deleted successfully\n", id, taskDescription);
     }
 
-    private static void markInProgress(String[] args, List<JSONObject> JSONObjects) {
-        if(args.length != 2){helpPrint(args[0]); return;}
+    private static void markInProgress(String[] args, List<JSONObject> JSONObjects, TaskIndexes indexes,
+                                       TaskChangeListener changes, PrintStream out) throws TaskCommandException {
+        if(!isSingleTask(args)){
+            markSelected(args, TaskStatus.in_progress, JSONObjects, indexes, changes, out);
+            return;
+        }
 
         int objectIndex = indexValidator(parseID(args[1]), JSONObjects);
 
@@ -192,11 +595,16 @@ public class TaskTracker {
             editedObject.setStatus(TaskStatus.todo);
         }
         updateTime(editedObject);
-        System.out.printf("Task ID: %d \"%s\" marked as \"%s\"\n", id, editedObject.getDescription(), statusToString(editedObject.getStatus()));
+        changes.taskUpdated(editedObject);
+        out.printf("Task ID: %d \"%s\" marked as \"%s\"\n", id, editedObject.getDescription(), statusToString(editedObject.getStatus()));
     }
 
-    private static void markDone(String[] args, List<JSONObject> JSONObjects) {
-        if(args.length != 2){helpPrint(args[0]); return;}
+    private static void markDone(String[] args, List<JSONObject> JSONObjects, TaskIndexes indexes,
+                                 TaskChangeListener changes, PrintStream out) throws TaskCommandException {
+        if(!isSingleTask(args)){
+            markSelected(args, TaskStatus.done, JSONObjects, indexes, changes, out);
+            return;
+        }
 
         int id = parseID(args[1]);
         int objectIndex = indexValidator(id, JSONObjects);
@@ -208,130 +616,314 @@ public class TaskTracker {
         if(currentStatus != TaskStatus.done){
             editedObject.setStatus(TaskStatus.done);
             updateTime(editedObject);
-            System.out.printf("Task ID: %d \"%s\" marked as \"%s\"\n", id, editedObject.getDescription(), statusToString(editedObject.getStatus()));
+            changes.taskUpdated(editedObject);
+            out.printf("Task ID: %d \"%s\" marked as \"%s\"\n", id, editedObject.getDescription(), statusToString(editedObject.getStatus()));
         } else {
-            System.out.printf("Task ID: %d already is marked as done!\n", id);
-            System.exit(1);
+            throw new TaskCommandException(String.format("Task ID: %d already is marked as done!", id));
         }
     }
 
-    private static void listTasks(String[] args, List<JSONObject> JSONObjects) {
-        if(args.length > 2){helpPrint(args[0]); return;}
-        if(JSONObjects.isEmpty()){
-            System.out.println("The task list is empty! Add some tasks to it");
-            System.exit(1);
-        }
-        int condition;
-        if(args.length == 1){
-            condition = -1;
-            conditionalAllTasksPrint(condition, JSONObjects);
+    /**
+     Bulk form of mark-* commands: sets status of every selected task that doesn't have it yet,
+     all of them get the same updatedAt
+     */
+    private static void markSelected(String[] args, TaskStatus status, List<JSONObject> JSONObjects, TaskIndexes indexes,
+                                     TaskChangeListener changes, PrintStream out) throws TaskCommandException {
+        TaskQuery query = parseBulkSelection(args, out);
+        if(query == null){
             return;
         }
-        switch(args[1].toLowerCase()){
-            case "todo":
-                condition = 0;
-                break;
-            case "in-progress":
-                condition = 1;
-                break;
-            case "done":
-                condition = 2;
-                break;
-            default:
-                System.out.println("Wrong argument. Printing help");
-                helpPrint("list");
-                return;
+        int[] selected = query.select(JSONObjects, indexes);
+        LocalDateTime updatedAt = LocalDateTime.now();
+        int marked = 0;
+        for(int index: selected){
+            JSONObject task = JSONObjects.get(index);
+            if(task.getStatus() == status){
+                continue;
+            }
+            task.setStatus(status);
+            task.setUpdatedAt(updatedAt);
+            changes.taskUpdated(task);
+            marked++;
+        }
+        out.printf("Marked %d tasks as \"%s\"", marked, statusToString(status));
+        if(marked != selected.length){
+            out.printf(", %d already were", selected.length - marked);
         }
-        conditionalAllTasksPrint(condition, JSONObjects);
+        out.println();
     }
 
     /**
-     Checks if status condition fits JSONObject object status to print the object
-     @param condition status enum ordinal to compare to. -1 = no condition
+     Reads tasks selection of bulk delete and mark-* commands: ids as single argument
+     (range 1000..5000 or list 10,11,12) and filter options (--status, --older-than and the time ranges of list)
+     @return query or null if arguments are wrong or select nothing at all, help is printed then
      */
-    private static void conditionalAllTasksPrint(int condition, List<JSONObject> JSONObjects){
-        for(JSONObject task:JSONObjects){
-            if(condition == task.getStatus().ordinal() || condition == -1){
-                printTask(task);
+    private static TaskQuery parseBulkSelection(String[] args, PrintStream out) throws TaskCommandException {
+        TaskQuery query = new TaskQuery();
+        List<String> arguments = splitOptionValues(args);
+        boolean idsGiven = false;
+        for(int i = 1; i < arguments.size(); i++){
+            String arg = arguments.get(i);
+            if(!arg.startsWith("--")){
+                if(idsGiven){helpPrint(out, args[0]); return null;}
+                query.setIds(arg);
+                idsGiven = true;
+            } else if(i + 1 == arguments.size()){
+                throw new TaskCommandException("Option " + arg + " needs a value");
+            } else if(!query.setFilterOption(arg, arguments.get(++i))){
+                out.println("Wrong argument. Printing help");
+                helpPrint(out, args[0]);
+                return null;
             }
         }
+        // bulk command without any selection would change every task
+        if(query.selectsEverything()){helpPrint(out, args[0]); return null;}
+        return query;
     }
 
     /**
-     Formats JSONObject object and prints it in console
-     @param task object to format and print
+     Splits options written as --name=value into two arguments, so they read the same as --name value
      */
-    private static void printTask(JSONObject task){
-        String createdAt = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.FULL, FormatStyle.SHORT).format(task.getCreatedAt());
-        String updatedAt = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.FULL, FormatStyle.SHORT).format(task.getUpdatedAt());
-        System.out.printf(
-                """
-                        ID: %d
-                        Task: %s
-                        Marked as: %s
-                        Created at: %s
-                        Updated at: %s
-
-                        """, task.getId(), task.getDescription(), statusToString(task.getStatus()), createdAt, updatedAt);
+    static List<String> splitOptionValues(String[] args){
+        List<String> arguments = new ArrayList<String>(args.length + 4);
+        for(String arg: args){
+            int equals = arg.indexOf('=');
+            if(arg.startsWith("--") && equals >= 0){
+                arguments.add(arg.substring(0, equals));
+                arguments.add(arg.substring(equals + 1));
+            } else {
+                arguments.add(arg);
+            }
+        }
+        return arguments;
     }
 
     /**
-     Converts status enums to strings
-     @param statusCode enum object to convert to string
-     @return converted status (examples: TODO; done; in-progress)
+     Removes tasks at given indexes in one compaction pass instead of shifting the list for every removed task
+     @param sortedIndexes list indexes in increasing order
      */
-    private static String statusToString(TaskStatus statusCode){
-        return switch (statusCode) {
-            case TaskStatus.todo -> "TODO";
-            case TaskStatus.in_progress -> "in-progress";
-            case TaskStatus.done -> "done";
-            default -> "TODO";
-        };
+    static void removeIndexes(List<JSONObject> JSONObjects, int[] sortedIndexes){
+        if(sortedIndexes.length == 0){
+            return;
+        }
+        int size = JSONObjects.size();
+        int write = sortedIndexes[0];
+        int next = 0;
+        for(int read = write; read < size; read++){
+            if(next < sortedIndexes.length && sortedIndexes[next] == read){
+                next++;
+                continue;
+            }
+            JSONObjects.set(write++, JSONObjects.get(read));
+        }
+        // removing from the end doesn't shift anything
+        for(int i = size - 1; i >= write; i--){
+            JSONObjects.remove(i);
+        }
     }
 
     /**
-     Makes list of JSON objects from tasks.json file to work with
-     @param fileContents string from json file to parse
-     @return reference to list with either JSONObject class objects in or empty list
+     Moves done tasks into tasks.archive, by default the ones not updated for 30 days.
+     Takes the same filters as bulk commands, only done tasks are archived whatever they say
      */
-    private static List<JSONObject> parseJSON(String fileContents){
-        if(fileContents.isEmpty()){
-            return new ArrayList<JSONObject>();
+    private static void archiveTasks(String[] args, List<JSONObject> JSONObjects, TaskIndexes indexes, TaskChangeListener changes,
+                                     PrintStream out) throws TaskCommandException {
+        TaskQuery query = new TaskQuery();
+        List<String> arguments = splitOptionValues(args);
+        for(int i = 1; i < arguments.size(); i++){
+            String arg = arguments.get(i);
+            if(!arg.startsWith("--")){helpPrint(out, args[0]); return;}
+            if(i + 1 == arguments.size()){
+                throw new TaskCommandException("Option " + arg + " needs a value");
+            }
+            if(!query.setFilterOption(arg, arguments.get(++i))){
+                out.println("Wrong argument. Printing help");
+                helpPrint(out, args[0]);
+                return;
+            }
         }
-        String JSONMonolith = fileContents.substring(fileContents.indexOf('[')+1, fileContents.lastIndexOf(']'));
-
-        JSONMonolith = JSONMonolith.strip().replaceAll("^\\{|}$", "");
-
-        String[] Objects = JSONMonolith.split("},[\r\n]+\t*\\{", 0);
-        if (Objects[0] == ""){
-            return new ArrayList<JSONObject>();
+        query.setStatus(TaskStatus.done);
+        if(!query.hasTimeRange()){
+            query.setFilterOption("--updated-before", DEFAULT_ARCHIVE_AGE);
         }
-        List<JSONObject> JSONObjects = new ArrayList<JSONObject>();
-        for(String Object:Objects){
-            // splitting json object for arguments(id, description, etc.)
-            String[] Attrs = Object.split(".+: |[,\r\n]+", 0);
+        try{
+            int count = archiveSelected(query, JSONObjects, indexes, changes);
+            out.printf("Archived %d tasks into %s\n", count, TaskArchive.PATH.getFileName());
+        } catch (IOException e){
+            throw new TaskCommandException("Uh-oh IOException: " + e.getMessage());
+        }
+    }
 
-            // removing "" from arguments
-            int i = 0;
-            for(String attr:Attrs){
-                Attrs[i] =  attr.replaceAll("\"", "");
-                i++;
-            }
+    /**
+     Archives done tasks not updated for TASKS_ARCHIVE_AFTER (age like 90d) when the variable is set,
+     called with exclusive lock held before changed tasks are saved
+     */
+    static void archiveAutomatically(List<JSONObject> JSONObjects, TaskIndexes indexes, TaskChangeListener changes){
+        String age = System.getenv("TASKS_ARCHIVE_AFTER");
+        if(age == null || age.isEmpty()){
+            return;
+        }
+        try{
+            TaskQuery query = new TaskQuery();
+            query.setStatus(TaskStatus.done);
+            query.setFilterOption("--updated-before", age);
+            archiveSelected(query, JSONObjects, indexes, changes);
+        } catch (TaskCommandException e){
+            System.err.println("TASKS_ARCHIVE_AFTER: " + e.getMessage());
+        } catch (IOException e){
+            System.err.println("Uh-oh IOException: couldn't archive tasks: " + e.getMessage());
+        }
+    }
 
-            int ID = Integer.parseInt(Attrs[2]);
+    /**
+     Writes selected tasks into new archive segment, then removes them from the list.
+     New ids continue after archived ones, see nextId
+     @return number of archived tasks
+     */
+    private static int archiveSelected(TaskQuery query, List<JSONObject> JSONObjects, TaskIndexes indexes,
+                                       TaskChangeListener changes) throws TaskCommandException, IOException {
+        int[] selected = query.select(JSONObjects, indexes);
+        int count = selected.length;
+        if(count == 0){
+            return 0;
+        }
+        List<JSONObject> archived = new ArrayList<JSONObject>(count);
+        int[] ids = new int[count];
+        for(int i = 0; i < count; i++){
+            JSONObject task = JSONObjects.get(selected[i]);
+            archived.add(task);
+            ids[i] = task.getId();
+        }
+        TaskArchive.open(TaskArchive.PATH).append(archived);
+        removeIndexes(JSONObjects, selected);
+        changes.tasksDeleted(ids);
+        return count;
+    }
 
-            int statusCode = Integer.parseInt(Attrs[6]);
-            TaskStatus status = TaskStatus.values()[statusCode];
+    private static void searchTasks(String[] args, List<JSONObject> JSONObjects, TaskIndexes indexes, PrintStream out)
+            throws TaskCommandException {
+        List<String> query = new ArrayList<String>(List.of(args).subList(1, args.length));
+        boolean rebuild = query.remove("--rebuild");
+        if(query.isEmpty()){helpPrint(out, args[0]); return;}
 
-            LocalDateTime createdAt = LocalDateTime.parse(Attrs[8]);
+        SearchIndex searchIndex;
+        try{
+            searchIndex = indexes.loadSearch(JSONObjects, rebuild);
+        } catch (IOException e){
+            throw new TaskCommandException("Uh-oh IOException: " + e.getMessage());
+        }
+        int[] ids = searchIndex.search(query);
+        TaskPrinter printer = new TaskPrinter(out, TaskPrinter.Format.text);
+        try{
+            for(int id: ids){
+                int index = TaskJournal.insertionIndex(id, JSONObjects);
+                if(index >= 0){
+                    printer.print(JSONObjects.get(index));
+                }
+            }
+            printer.finish();
+        } catch (IOException e){
+            throw new TaskCommandException("Uh-oh IOException: " + e.getMessage());
+        }
+        if(ids.length == 0){
+            out.println("No tasks match the query");
+        }
+    }
 
-            LocalDateTime updatedAt = LocalDateTime.parse(Attrs[10]);
+    private static void listTasks(String[] args, List<JSONObject> JSONObjects, TaskIndexes indexes, PrintStream out)
+            throws TaskCommandException {
+        TaskQuery query = new TaskQuery();
+        TaskPrinter.Format format = parseListArguments(args, query, out);
+        if(format == null){
+            return;
+        }
+        try{
+            // archived tasks are listed together with hot ones when the query can match their segments
+            TaskArchive archive = TaskArchive.open(TaskArchive.PATH);
+            List<JSONObject> archived = archive.isEmpty() ? List.of() : archive.load(query);
+            if(!archived.isEmpty()){
+                JSONObjects = TaskArchive.merge(JSONObjects, archived);
+                indexes = new TaskIndexes();
+            }
+        } catch (IOException e){
+            throw new TaskCommandException("Uh-oh IOException: couldn't read " + TaskArchive.PATH + ": " + e.getMessage());
+        } catch (JSONParseException e){
+            throw new TaskCommandException("Archive is malformed: " + e.getMessage());
+        }
+        boolean readable = format == TaskPrinter.Format.text || format == TaskPrinter.Format.table;
+        if(JSONObjects.isEmpty() && readable){
+            throw new TaskCommandException("The task list is empty! Add some tasks to it");
+        }
+        TaskPrinter printer = new TaskPrinter(out, format);
+        try{
+            int lastId = query.run(JSONObjects, indexes, printer);
+            if(lastId != Integer.MIN_VALUE){
+                printer.printNote("Next page: --after " + lastId);
+            }
+            printer.finish();
+        } catch (IOException e){
+            throw new TaskCommandException("Uh-oh IOException: " + e.getMessage());
+        }
+    }
 
-            JSONObjects.add(new JSONObject(ID, Attrs[4], status, createdAt , updatedAt));
+    /**
+     Reads status and options of list command into the query, help is printed for wrong arguments
+     @return output format or null if help was printed
+     @throws TaskCommandException if option has no value or its value can't be parsed
+     */
+    static TaskPrinter.Format parseListArguments(String[] args, TaskQuery query, PrintStream out) throws TaskCommandException {
+        TaskPrinter.Format format = TaskPrinter.Format.text;
+        List<String> arguments = splitOptionValues(args);
+        boolean statusGiven = false;
+        for(int i = 1; i < arguments.size(); i++){
+            String arg = arguments.get(i);
+            if(!arg.startsWith("--")){
+                if(statusGiven){helpPrint(out, args[0]); return null;}
+                statusGiven = true;
+                TaskStatus status = parseStatus(arg);
+                if(status == null){
+                    out.println("Wrong argument. Printing help");
+                    helpPrint(out, "list");
+                    return null;
+                }
+                query.setStatus(status);
+            } else if(i + 1 == arguments.size()){
+                throw new TaskCommandException("Option " + arg + " needs a value");
+            } else if(arg.equals("--format")){
+                format = TaskPrinter.parseFormat(arguments.get(++i));
+            } else if(!query.setOption(arg, arguments.get(++i))){
+                out.println("Wrong argument. Printing help");
+                helpPrint(out, "list");
+                return null;
+            }
         }
+        return format;
+    }
 
-        return JSONObjects;
+    /**
+     @return status written as list and filters take it (todo, in-progress, done) or null if it is none of them
+     */
+    static TaskStatus parseStatus(String status){
+        return switch(status.toLowerCase()){
+            case "todo" -> TaskStatus.todo;
+            case "in-progress" -> TaskStatus.in_progress;
+            case "done" -> TaskStatus.done;
+            default -> null;
+        };
+    }
 
+    /**
+     Converts status enums to strings
+     @param statusCode enum object to convert to string
+     @return converted status (examples: TODO; done; in-progress)
+     */
+    static String statusToString(TaskStatus statusCode){
+        return switch (statusCode) {
+            case TaskStatus.todo -> "TODO";
+            case TaskStatus.in_progress -> "in-progress";
+            case TaskStatus.done -> "done";
+            default -> "TODO";
+        };
     }
 
     /**
@@ -351,14 +943,14 @@ public class TaskTracker {
         int lastIndex = JSONObjects.size()-1;
 
 
-        if (idSearchGoal < JSONObjects.get(firstIndex).getId()
-            || idSearchGoal > JSONObjects.get(lastIndex).getId()) {
+        if (idSearchGoal < idAt(JSONObjects, firstIndex)
+            || idSearchGoal > idAt(JSONObjects, lastIndex)) {
             throw NoObjectFound;
         }
 
         while(firstIndex<=lastIndex){
             midIndex = (lastIndex+firstIndex)/2;
-            midID = JSONObjects.get(midIndex).getId();
+            midID = idAt(JSONObjects, midIndex);
 
             if( midID == idSearchGoal){
                 return midIndex;
@@ -373,33 +965,84 @@ public class TaskTracker {
     }
 
     /**
-     idBinarySearch wrapper to print out exception,
+     Reads id of object at given index, mapped and indexed lists read it straight from id column
+     without creating JSONObject objects
+     */
+    static int idAt(List<JSONObject> JSONObjects, int index){
+        if(JSONObjects instanceof MappedTaskList mappedTasks){
+            return mappedTasks.idAt(index);
+        }
+        if(JSONObjects instanceof IndexedTaskList indexedTasks){
+            return indexedTasks.idAt(index);
+        }
+        return JSONObjects.get(index).getId();
+    }
+
+    /**
+     @return task at index, mapped and indexed lists read it without keeping it
+     */
+    static JSONObject readAt(List<JSONObject> JSONObjects, int index){
+        if(JSONObjects instanceof MappedTaskList mappedTasks){
+            return mappedTasks.readAt(index);
+        }
+        if(JSONObjects instanceof IndexedTaskList indexedTasks){
+            return indexedTasks.readAt(index);
+        }
+        return JSONObjects.get(index);
+    }
+
+    /**
+     idBinarySearch wrapper to turn not found exception into command error,
      see idBinarySearch function for more info
      */
-    private static int indexValidator(int idSearchGoal, List<JSONObject> JSONObjects){
+    private static int indexValidator(int idSearchGoal, List<JSONObject> JSONObjects) throws TaskCommandException {
         try{
             return(idBinarySearch(idSearchGoal, JSONObjects));
         } catch(Exception notFound){
-            System.err.println(notFound.getMessage());
-            System.exit(1);
+            if(isArchived(idSearchGoal)){
+                throw new TaskCommandException(String.format(
+                        "Task ID: %d is archived, archived tasks can't be changed (list --ids %d shows it)", idSearchGoal, idSearchGoal));
+            }
+            throw new TaskCommandException(notFound.getMessage());
+        }
+    }
+
+    private static boolean isArchived(int id){
+        try{
+            return TaskArchive.open(TaskArchive.PATH).contains(id);
+        } catch (IOException | JSONParseException ignored){
+            return false;
         }
-        return 0;
     }
 
     /**
-     Integer.parseInt wrapper to work with exception in user input,
-     outputs error message if argument can't be parsed as int
+     Integer.parseInt wrapper to work with exception in user input
      @param idArg argument from command line args that should correspond to ID
      @return Int equivalent of argument of id
+     @throws TaskCommandException with error message if argument can't be parsed as int
      */
-    private static int parseID(String idArg){
+    static int parseID(String idArg) throws TaskCommandException {
         try {
             return (Integer.parseInt(idArg));
         } catch (NumberFormatException ignored){
-            System.err.println("Provided ID is not an integer.\nExamples of ID value: 1, 2, 10, 25");
-            System.exit(1);
+            throw new TaskCommandException("Provided ID is not an integer.\nExamples of ID value: 1, 2, 10, 25");
         }
-        return 0;
+    }
+
+    /**
+     Integer.parseInt wrapper for non-negative option values like --limit
+     @param option name of the option for error message
+     @throws TaskCommandException if value isn't a non-negative integer
+     */
+    static int parseCount(String option, String value) throws TaskCommandException {
+        try {
+            int count = Integer.parseInt(value);
+            if(count >= 0){
+                return count;
+            }
+        } catch (NumberFormatException ignored){
+        }
+        throw new TaskCommandException(option + " needs a non-negative integer, got \"" + value + "\"");
     }
 
     /**
@@ -410,8 +1053,8 @@ public class TaskTracker {
         LocalDateTime updatedAt = LocalDateTime.now();
         updatedObject.setUpdatedAt(updatedAt);
     }
-    private static void helpPrint(){
-        System.out.println(
+    static void helpPrint(PrintStream out){
+        out.println(
                 """
                         About: This is task tracker made with java
                         Available commands:
@@ -424,12 +1067,21 @@ public class TaskTracker {
                         -\tdelete: deletes a task
                         -\tmark-in-progress: marks task as in progress
                         -\tmark-done: marks task as done
-                        -\tlist: lists tasks""");
+                        -\tlist: lists tasks
+                        -\tsearch: finds tasks by words of their description
+                        -\tconvert: copies tasks to another storage
+                        -\tbatch: runs commands from file or standard input, one per line
+                        -\tserve: keeps tasks in memory and runs commands sent by other task-tracker-java calls
+                        -\tarchive: moves old done tasks into compressed tasks.archive, list still shows them
+                        -\texport: writes every task to file or standard output as NDJSON or CSV
+                        -\timport: adds tasks from NDJSON or CSV file or standard input
+
+                        Any command takes --stats (or --stats=file) to print timings of its phases as one JSON line""");
     }
-    private static void helpPrint(String arg){
+    static void helpPrint(PrintStream out, String arg){
         switch(arg){
             case "add":
-                System.out.println(
+                out.println(
                         "Name of the argument:" + arg +"\n" +
                         "Description: Adds a task to the task list\n" +
                         "Needs one argument - description of the task\n" +
@@ -437,7 +1089,7 @@ public class TaskTracker {
                         "Output: Task \"Play with the cat\" added successfully(ID: 1)");
                 break;
             case "update":
-                System.out.println(
+                out.println(
                         "Name of the argument:" + arg +"\n" +
                         "Description: Updates an already existing task\n" +
                         "Needs two arguments:\n" +
@@ -447,33 +1099,46 @@ public class TaskTracker {
                         "Output: Task ID: 1 \"Play with the cat\" updated to \"Play with the dog\" successfully");
                 break;
             case "delete":
-                System.out.println(
+                out.println(
                         "Name of the argument:" + arg +"\n" +
                         "Description: Deletes an already existing task\n" +
                         "Needs one argument - ID of the task\n" +
+                        "Bulk form - ID range (1000..5000), ID list (10,11,12) and/or filters:\n" +
+                                "\t--status S, --older-than AGE (created before, e.g. 30d) and time ranges of list\n" +
                         "Example: task-tracker-java delete 1\n" +
-                        "Output: Task ID: 1 \"Play with the dog\" deleted successfully");
+                        "Output: Task ID: 1 \"Play with the dog\" deleted successfully\n" +
+                        "Example: task-tracker-java delete --status done\n" +
+                        "Output: Deleted 120 tasks");
                 break;
             case "mark-in-progress":
-                System.out.println(
+                out.println(
                         "Name of the argument:" + arg +"\n" +
                         "Description: " +
                                 "\tMarks an already existing task as \"In progress\"\n" +
                                 "\tor if its already marked as such resets it to \"TODO\"\n" +
                         "Needs one argument - ID of the task\n" +
+                        "Bulk form - ID range (1000..5000), ID list (10,11,12) and/or filters:\n" +
+                                "\t--status S, --older-than AGE (created before, e.g. 30d) and time ranges of list\n" +
+                                "\tbulk form marks selected tasks as \"In progress\" without resetting any to \"TODO\"\n" +
                         "Example: task-tracker-java mark-in-progress 1\n" +
-                        "Output: Task ID: 1 \"Play with the cat\" marked as \"in-progress\"");
+                        "Output: Task ID: 1 \"Play with the cat\" marked as \"in-progress\"\n" +
+                        "Example: task-tracker-java mark-in-progress --status todo --older-than 30d\n" +
+                        "Output: Marked 12 tasks as \"in-progress\"");
                 break;
             case "mark-done":
-                System.out.println(
+                out.println(
                         "Name of the argument:" + arg +"\n" +
                         "Description: Marks an already existing task as \"Done\"\n" +
                         "Needs one argument - ID of the task\n" +
+                        "Bulk form - ID range (1000..5000), ID list (10,11,12) and/or filters:\n" +
+                                "\t--status S, --older-than AGE (created before, e.g. 30d) and time ranges of list\n" +
                         "Example: task-tracker-java mark-done 1\n" +
-                        "Output: Task ID: 1 \"Play with the cat\" marked as \"Done\"");
+                        "Output: Task ID: 1 \"Play with the cat\" marked as \"Done\"\n" +
+                        "Example: task-tracker-java mark-done 10,11,12\n" +
+                        "Output: Marked 2 tasks as \"done\", 1 already were");
                 break;
             case "list":
-                System.out.println(
+                out.println(
                         "Name of the argument:" + arg +"\n" +
                         "Description: Lists tasks\n" +
                         "Arguments (one):\n" +
@@ -481,19 +1146,121 @@ public class TaskTracker {
                                 "\t2)done: Lists every task marked \"done\"\n" +
                                 "\t3)todo: Lists every task marked \"TODO\"\n" +
                                 "\t4)in-progress: Lists every task marked \"In progress\"\n" +
+                        "Options:\n" +
+                                "\t--limit N: Prints at most N tasks\n" +
+                                "\t--offset N: Skips first N matching tasks\n" +
+                                "\t--after ID: Starts after task with given ID, shown as \"Next page\" at the end of a page\n" +
+                                "\t--format F: Output format - text (default), table, ndjson or csv\n" +
+                                "\t--ids FROM..TO: Lists tasks with ID in range, either end can be left out\n" +
+                                "\t--created-after T, --created-before T, --updated-after T, --updated-before T:\n" +
+                                "\t\tTime range, T is a date (2024-05-01), date and time (2024-05-01T10:30) or age (7d, 12h, 30m)\n" +
+                                "\t--sort KEY: Orders by id (default), created or updated, add :desc for descending order\n" +
+                                "\t--watch: Keeps running after the list and prints tasks added, changed or removed\n" +
+                                "\t\twhenever tasks are saved, until stopped (text, table or ndjson, without page options)\n" +
                         "Example:\n" +
                                 "\t1)task-tracker-java list\n" +
                                 "\t2)task-tracker-java list todo\n" +
+                                "\t3)task-tracker-java list todo --limit 20 --after 40\n" +
+                                "\t4)task-tracker-java list --format=csv\n" +
+                                "\t5)task-tracker-java list in-progress --updated-before 7d --sort updated --limit 50\n" +
+                                "\t6)task-tracker-java list in-progress --watch\n" +
                         "Output:\n" +
                                 "\tID: 0 \n\tTask: \"Play with the cat\" \n\tMarked as: done\n\tCreated at: *date*\n\tUpdated at: *date*\n\n" +
                                 "\tID: 1 \n\tTask: \"Buy groceries\" \n\tMarked as: TODO\n\tCreated at: *date*\n\tUpdated at: *date*");
                 break;
+            case "search":
+                out.println(
+                        "Name of the argument:" + arg +"\n" +
+                        "Description: Lists tasks whose description contains given words (case insensitive)\n" +
+                        "Arguments (one or more):\n" +
+                                "\t1)word: task has to contain every word\n" +
+                                "\t2)OR: tasks matching words before or after it\n" +
+                                "\t3)word*: any word starting with it\n" +
+                                "\t4)--rebuild: rebuilds search index from every description\n" +
+                        "Example:\n" +
+                                "\t1)task-tracker-java search play cat\n" +
+                                "\t2)task-tracker-java search cat OR dog\n" +
+                                "\t3)task-tracker-java search groc*\n" +
+                        "Output: tasks in the same format as list");
+                break;
+            case "convert":
+                out.println(
+                        "Name of the argument:" + arg +"\n" +
+                        "Description: Copies every task from current storage (TASKS_STORAGE) to another storage,\n" +
+                                "\treplacing its contents\n" +
+                        "Needs one argument - name of the target storage: json, journal, binary or sharded\n" +
+                        "Example: task-tracker-java convert binary\n" +
+                        "Output: Converted 2 tasks to binary storage");
+                break;
+            case "archive":
+                out.println(
+                        "Name of the argument:" + arg +"\n" +
+                        "Description: Moves done tasks into compressed segment of tasks.archive directory,\n" +
+                                "\tso commands don't read and rewrite them anymore. list and list done still show them,\n" +
+                                "\tarchived tasks can't be changed and ids of new tasks continue after them.\n" +
+                                "\tWith TASKS_ARCHIVE_AFTER=AGE (like 90d) every command that changes tasks archives them as well\n" +
+                        "Arguments (optional): filters of list (--ids, --older-than, --created-*/--updated-* ranges),\n" +
+                                "\tdone tasks not updated for " + DEFAULT_ARCHIVE_AGE + " are archived if no time filter is given\n" +
+                        "Example: task-tracker-java archive --updated-before 2024-01-01\n" +
+                        "Output: Archived 1200 tasks into tasks.archive");
+                break;
+            case "export":
+                out.println(
+                        "Name of the argument:" + arg +"\n" +
+                        "Description: Writes every task, archived ones included, as NDJSON (one task per line)\n" +
+                                "\tor CSV with header line. Tasks are streamed, they aren't all kept in memory\n" +
+                        "Arguments (optional):\n" +
+                                "\t1)--format ndjson|csv: output format, taken from file extension if not given (ndjson by default)\n" +
+                                "\t2)path to file, standard output is used if not given\n" +
+                        "Example: task-tracker-java export tasks.csv\n" +
+                        "Output: Exported 1200 tasks to tasks.csv");
+                break;
+            case "import":
+                out.println(
+                        "Name of the argument:" + arg +"\n" +
+                        "Description: Adds tasks read from NDJSON or CSV written by export or list --format.\n" +
+                                "\tImported tasks get new ids after the highest one, description, status and times are kept.\n" +
+                                "\tTasks are saved in chunks of " + TaskTransfer.IMPORT_CHUNK + ". Import isn't rolled back: malformed record stops it,\n" +
+                                "\ttasks of the records before it stay saved and the error tells the line to import the rest from\n" +
+                        "Arguments (optional):\n" +
+                                "\t1)--format ndjson|csv: input format, taken from file extension if not given (ndjson by default)\n" +
+                                "\t2)path to file, standard input is read if not given\n" +
+                        "Example: task-tracker-java import tasks.csv\n" +
+                        "Output: Imported 1200 tasks");
+                break;
+            case "batch":
+                out.println(
+                        "Name of the argument:" + arg +"\n" +
+                        "Description: Runs commands written one per line in a file or standard input,\n" +
+                                "\ttasks are loaded once and saved once at the end.\n" +
+                                "\tArguments with spaces go in quotes, lines starting with # are skipped.\n" +
+                                "\tFailed line is reported with its number and batch goes on.\n" +
+                                "\tbatch, serve, convert, export, import and list --watch can't be used inside batch.\n" +
+                                "\tWith TASKS_FLUSH_INTERVAL=ms changes are also saved in background while lines run\n" +
+                        "Arguments (optional):\n" +
+                                "\t1)--save-every N: also saves tasks after every N commands\n" +
+                                "\t2)path to file with commands, standard input is read if not given\n" +
+                        "Example: task-tracker-java batch commands.txt\n" +
+                        "Output: output of every command, then \"Batch finished: 10 commands, 1 failed\" if any failed");
+                break;
+            case "serve":
+                out.println(
+                        "Name of the argument:" + arg +"\n" +
+                        "Description: Starts daemon that keeps tasks in memory and listens on tasks.sock,\n" +
+                                "\tother task-tracker-java calls in the same directory send their commands to it\n" +
+                                "\tinstead of loading tasks themselves. Stop it with Ctrl+C.\n" +
+                                "\tWith TASKS_FLUSH_INTERVAL=ms changes are saved in background at most once per interval\n" +
+                                "\t(or once TASKS_FLUSH_CHANGES of them piled up) instead of after every command\n" +
+                        "Needs no arguments\n" +
+                        "Example: task-tracker-java serve\n" +
+                        "Output: Serving tasks on /home/user/tasks.sock");
+                break;
             case "--help":
             case "-h":
-                helpPrint();
+                helpPrint(out);
                 break;
             default:
-                helpPrint();
+                helpPrint(out);
         }
     }
 }
\ No newline at end of file
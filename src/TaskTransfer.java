@@ -0,0 +1,323 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ Streaming export and import of tasks as NDJSON (the same records as list --format ndjson) or CSV (list --format csv).
+ Export writes through the fixed-size buffer of TaskPrinter, tasks of mapped storages (json with fresh tasks.json.idx,
+ binary) are read one at a time without being kept, archived tasks follow the stored ones.
+ Import reads records through fixed-size buffer, gives them ids continuing after the highest stored or archived id like add does
+ and saves every IMPORT_CHUNK tasks: json storage appends them to tasks.json in place, binary storage writes
+ only new records, and the list is mapped again for the next chunk, so memory doesn't grow with the number
+ of tasks. journal and sharded storages keep the whole list in memory, like every command does with them.
+ Import isn't rolled back: when a record can't be read, tasks of the records before it stay saved
+ and the error tells the line to import the rest from.
+ Import holds exclusive tasks.lock until the last chunk is saved, export holds shared lock
+ */
+@SuppressWarnings("try")
+public class TaskTransfer {
+    static final int IMPORT_CHUNK = 1 << 14;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final String CSV_HEADER = "id,description,status,createdAt,updatedAt";
+
+    /**
+     Entry point for "export [--format ndjson|csv] [file]" and "import [--format ndjson|csv] [file]" commands,
+     format is taken from file extension when it isn't given, standard output or input is used without file
+     @return exit code
+     */
+    public static int run(String[] args){
+        TaskPrinter.Format format = null;
+        Path file = null;
+        List<String> arguments = TaskTracker.splitOptionValues(args);
+        try{
+            for(int i = 1; i < arguments.size(); i++){
+                String arg = arguments.get(i);
+                if(arg.equals("--format") && i + 1 < arguments.size()){
+                    format = TaskPrinter.parseFormat(arguments.get(++i));
+                    if(format != TaskPrinter.Format.ndjson && format != TaskPrinter.Format.csv){
+                        throw new TaskCommandException("Only ndjson and csv formats can be used with " + args[0]);
+                    }
+                } else if(file == null && !arg.startsWith("--")){
+                    file = Path.of(arg);
+                } else {
+                    TaskTracker.helpPrint(System.out, args[0]);
+                    return 1;
+                }
+            }
+        } catch (TaskCommandException e){
+            System.err.println(e.getMessage());
+            return 1;
+        }
+        if(format == null){
+            boolean csv = file != null && file.getFileName().toString().toLowerCase().endsWith(".csv");
+            format = csv ? TaskPrinter.Format.csv : TaskPrinter.Format.ndjson;
+        }
+
+        TaskStore store = TaskTracker.openStore(TaskTracker.storageName());
+        if(store == null){
+            return 1;
+        }
+        if(store instanceof JSONTaskStore jsonStore){
+            jsonStore.setIndexedLoad(true);
+        }
+        try(TaskLock lock = TaskLock.open(TaskLock.PATH)){
+            return args[0].equals("export") ? export(store, lock, format, file) : importTasks(store, lock, format, file);
+        } catch (TaskCommandException e){
+            System.err.println(e.getMessage());
+            for(Throwable saveError: e.getSuppressed()){
+                System.err.println("Tasks read before the record couldn't be saved, Uh-oh IOException: " + saveError.getMessage());
+            }
+        } catch (JSONParseException e){
+            System.err.println(e.getMessage());
+        } catch (IOException e){
+            System.err.println("Uh-oh IOException: " + e.getMessage());
+        }
+        return 1;
+    }
+
+    private static int export(TaskStore store, TaskLock lock, TaskPrinter.Format format, Path file)
+            throws IOException, JSONParseException {
+        lock.lockShared();
+        List<JSONObject> JSONObjects = TaskTracker.loadFromStore(store);
+        if(JSONObjects == null){
+            return 1;
+        }
+        PrintStream out = file != null
+                ? new PrintStream(Files.newOutputStream(file), false, StandardCharsets.UTF_8)
+                : System.out;
+        long count;
+        try(TaskStats.Phase phase = TaskStats.phase("export")){
+            TaskPrinter printer = new TaskPrinter(out, format);
+            int size = JSONObjects.size();
+            for(int i = 0; i < size; i++){
+                printer.print(TaskTracker.readAt(JSONObjects, i));
+            }
+            count = size + TaskArchive.open(TaskArchive.PATH).export(printer);
+            printer.finish();
+        } finally {
+            if(file != null){
+                out.close();
+            }
+        }
+        if(file != null){
+            System.out.printf("Exported %d tasks to %s\n", count, file);
+        }
+        return 0;
+    }
+
+    private static int importTasks(TaskStore store, TaskLock lock, TaskPrinter.Format format, Path file)
+            throws IOException, JSONParseException, TaskCommandException {
+        lock.lockExclusive();
+        List<JSONObject> JSONObjects = TaskTracker.loadFromStore(store);
+        if(JSONObjects == null){
+            return 1;
+        }
+        // these storages map their files, loading them again after a chunk drops the chunk from memory
+        boolean mapped = store instanceof JSONTaskStore || store instanceof BinaryTaskStore;
+        long imported = 0;
+        int chunk = 0;
+        int nextId = TaskTracker.nextId(JSONObjects);
+        TaskChangeListener changes = store.changes();
+        try(BufferedReader reader = file != null
+                ? Files.newBufferedReader(file, StandardCharsets.UTF_8)
+                : new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), READ_BUFFER_SIZE)){
+            RecordReader records = new RecordReader(reader, format);
+            JSONObject task;
+            while((task = nextRecord(records, imported)) != null){
+                task.setId(nextId++);
+                JSONObjects.add(task);
+                changes.taskAdded(task);
+                imported++;
+                if(++chunk == IMPORT_CHUNK){
+                    chunk = 0;
+                    saveChunk(store, lock, JSONObjects);
+                    if(mapped){
+                        JSONObjects = store.load();
+                    }
+                }
+            }
+        } catch (TaskCommandException | IOException e){
+            // tasks read before the broken record are saved, the error tells the line to go on from,
+            // failing save is added to it instead of replacing it
+            try{
+                if(chunk != 0 && e instanceof TaskCommandException){
+                    saveChunk(store, lock, JSONObjects);
+                }
+                store.awaitBackgroundSave();
+            } catch (IOException saveError){
+                e.addSuppressed(saveError);
+            }
+            throw e;
+        }
+        if(chunk != 0){
+            saveChunk(store, lock, JSONObjects);
+        }
+        store.awaitBackgroundSave();
+        System.out.printf("Imported %d tasks\n", imported);
+        return 0;
+    }
+
+    /**
+     Saves imported tasks, version is incremented even if saving fails, storage may be written partly then
+     */
+    private static void saveChunk(TaskStore store, TaskLock lock, List<JSONObject> JSONObjects) throws IOException {
+        try(TaskStats.Phase phase = TaskStats.phase("save")){
+            store.save(JSONObjects);
+        } finally {
+            lock.incrementVersion();
+        }
+    }
+
+    /**
+     Reads the next record, error of record that can't be read tells how many tasks were saved
+     and the line to import the rest of input from
+     @param imported number of tasks imported before the record, all of them are saved when the error is thrown
+     @return next task or null at the end of input
+     */
+    private static JSONObject nextRecord(RecordReader records, long imported) throws TaskCommandException {
+        try{
+            return records.next();
+        } catch (TaskCommandException | IOException e){
+            String reason = e instanceof IOException ? "Uh-oh IOException: " + e.getMessage() : e.getMessage();
+            long line = records.recordLine();
+            throw new TaskCommandException(reason + "\nImport stopped: " + imported + " tasks from records before line " + line
+                    + " are saved, fix the record and import the input from line " + line + " on");
+        }
+    }
+
+    /**
+     Reads task records one at a time: NDJSON line or CSV record that can span lines inside quotes.
+     Header line of CSV is skipped, id of the record is read but import replaces it
+     */
+    private static class RecordReader {
+        private final BufferedReader m_reader;
+        private final TaskPrinter.Format m_format;
+        private final StringBuilder m_field = new StringBuilder();
+        private final List<String> m_fields = new ArrayList<String>(5);
+        private long m_lineNumber;
+        // line the last record started at, CSV record spans more lines when quoted field has line breaks
+        private long m_recordLine = 1;
+        private boolean m_first = true;
+
+        RecordReader(BufferedReader reader, TaskPrinter.Format format){
+            m_reader = reader;
+            m_format = format;
+        }
+
+        /**
+         @return line the last read record started at
+         */
+        long recordLine(){
+            return m_recordLine;
+        }
+
+        /**
+         @return next task or null at the end of input
+         @throws TaskCommandException with line number if record is malformed
+         */
+        JSONObject next() throws IOException, TaskCommandException {
+            if(m_format == TaskPrinter.Format.ndjson){
+                String line;
+                while((line = m_reader.readLine()) != null){
+                    m_lineNumber++;
+                    if(line.isBlank()){
+                        continue;
+                    }
+                    m_recordLine = m_lineNumber;
+                    try{
+                        return new JSONParser(line).parseSingleTask();
+                    } catch (JSONParseException e){
+                        throw new TaskCommandException("Line " + m_lineNumber + ": " + e.getReason());
+                    }
+                }
+                return null;
+            }
+            while(readCSVRecord()){
+                if(m_fields.size() == 1 && m_fields.getFirst().isEmpty()){
+                    continue;
+                }
+                boolean first = m_first;
+                m_first = false;
+                if(first && String.join(",", m_fields).equals(CSV_HEADER)){
+                    continue;
+                }
+                return csvTask();
+            }
+            return null;
+        }
+
+        private JSONObject csvTask() throws TaskCommandException {
+            if(m_fields.size() != 5){
+                throw new TaskCommandException("Line " + m_lineNumber + ": expected 5 fields (" + CSV_HEADER + "), found " + m_fields.size());
+            }
+            TaskStatus status = TaskTracker.parseStatus(m_fields.get(2));
+            if(status == null){
+                throw new TaskCommandException("Line " + m_lineNumber + ": unknown status \"" + m_fields.get(2) + "\"");
+            }
+            try{
+                return new JSONObject(0, m_fields.get(1), status,
+                        LocalDateTime.parse(m_fields.get(3)), LocalDateTime.parse(m_fields.get(4)));
+            } catch (DateTimeParseException e){
+                throw new TaskCommandException("Line " + m_lineNumber + ": " + e.getMessage());
+            }
+        }
+
+        /**
+         Reads fields of one RFC 4180 record: fields in double quotes can hold commas, line breaks
+         and doubled quotes, record ends with \n or \r\n
+         @return false at the end of input
+         */
+        private boolean readCSVRecord() throws IOException, TaskCommandException {
+            m_fields.clear();
+            m_field.setLength(0);
+            int c = m_reader.read();
+            if(c < 0){
+                return false;
+            }
+            m_lineNumber++;
+            m_recordLine = m_lineNumber;
+            boolean quoted = false;
+            while(true){
+                if(quoted){
+                    if(c < 0){
+                        throw new TaskCommandException("Line " + m_lineNumber + ": quoted field isn't closed");
+                    }
+                    if(c == '"'){
+                        c = m_reader.read();
+                        if(c == '"'){
+                            m_field.append('"');
+                        } else {
+                            quoted = false;
+                            continue;
+                        }
+                    } else {
+                        if(c == '\n'){
+                            m_lineNumber++;
+                        }
+                        m_field.append((char) c);
+                    }
+                } else if(c == '"' && m_field.isEmpty()){
+                    quoted = true;
+                } else if(c == ','){
+                    m_fields.add(m_field.toString());
+                    m_field.setLength(0);
+                } else if(c == '\n' || c < 0){
+                    break;
+                } else if(c != '\r'){
+                    m_field.append((char) c);
+                }
+                c = m_reader.read();
+            }
+            m_fields.add(m_field.toString());
+            return true;
+        }
+    }
+}
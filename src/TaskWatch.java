@@ -0,0 +1,281 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ list --watch: one process prints the list once and then only tasks that were added, changed or removed,
+ so dashboards don't start JVM and read the whole list on every poll.
+ Working directory is watched with WatchService (inotify on Linux, waiting for events costs no CPU).
+ Events for tasks.* files are debounced until none came for DEBOUNCE_MILLIS, then fingerprint of the storage
+ is compared: version of tasks.lock, which every save increments, and size and modification time of storage files,
+ which catch changes made by hand. Storage is loaded again only when the fingerprint changed, so events caused
+ by readers (list rebuilding tasks.json.idx) cost nothing. Matching tasks of the last refresh are kept as sorted
+ id and updatedAt columns and new ones are merged against them by id, only differences are printed;
+ archived tasks are read again only when the archive index changed.
+ Refresh costs one load and query of the whole list however few tasks changed: only journal storage keeps
+ a log of changes, json and binary are patched in place, so finding changed tasks would need a full scan as well.
+ Debouncing keeps it to one refresh per burst of saves
+ */
+public class TaskWatch {
+    static final String ARGUMENT = "--watch";
+    static final long DEBOUNCE_MILLIS = 200;
+    // burst of changes that doesn't stop is still shown this often
+    private static final long MAX_DELAY_MILLIS = 2000;
+    private static final Path DIRECTORY = Path.of(".");
+    private static final Path[] STORAGE_FILES = {Path.of("./tasks.json"), Path.of("./tasks.journal"), Path.of("./tasks.bin")};
+    private static final Path ARCHIVE_INDEX = TaskArchive.PATH.resolve(TaskArchive.INDEX);
+
+    private final TaskStore m_store;
+    private final TaskLock m_lock;
+    private final TaskQuery m_query;
+    private final PrintStream m_out;
+    private final TaskPrinter m_printer;
+    private long[] m_fingerprint;
+    private long[] m_archiveFingerprint;
+    private List<JSONObject> m_archived = List.of();
+    // matching tasks of the last refresh sorted by id, updatedAt in epoch millis
+    private int[] m_ids;
+    private long[] m_updated;
+
+    private TaskWatch(TaskStore store, TaskLock lock, TaskQuery query, PrintStream out, TaskPrinter.Format format){
+        m_store = store;
+        m_lock = lock;
+        m_query = query;
+        m_out = out;
+        m_printer = new TaskPrinter(out, format);
+    }
+
+    /**
+     Entry point for "list [status] [filters] --watch", runs until the process is stopped or output is closed
+     @return exit code
+     */
+    public static int run(String[] args){
+        String[] listArgs = Arrays.stream(args).filter(arg -> !arg.equals(ARGUMENT)).toArray(String[]::new);
+        for(String arg: TaskTracker.splitOptionValues(listArgs)){
+            if(arg.equals("--limit") || arg.equals("--offset") || arg.equals("--after")){
+                System.err.println(ARGUMENT + " follows every matching task, it can't be used with " + arg);
+                return 1;
+            }
+        }
+        TaskQuery query = new TaskQuery();
+        TaskPrinter.Format format;
+        try{
+            format = TaskTracker.parseListArguments(listArgs, query, System.out);
+        } catch (TaskCommandException e){
+            System.err.println(e.getMessage());
+            return 1;
+        }
+        if(format == null){
+            return 1;
+        }
+        if(format == TaskPrinter.Format.csv){
+            System.err.println(ARGUMENT + " prints text, table or ndjson, csv can't show removed tasks");
+            return 1;
+        }
+        TaskStore store = TaskTracker.openStore(TaskTracker.storageName());
+        if(store == null){
+            return 1;
+        }
+
+        try(TaskLock lock = TaskLock.open(TaskLock.PATH);
+            WatchService watcher = FileSystems.getDefault().newWatchService()){
+            // registered before the first load, so no save is missed between them
+            DIRECTORY.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            new TaskWatch(store, lock, query, System.out, format).watch(watcher);
+            return 0;
+        } catch (TaskCommandException e){
+            System.err.println(e.getMessage());
+        } catch (InterruptedException e){
+            return 0;
+        } catch (IOException e){
+            System.err.println("Uh-oh IOException: " + e.getMessage());
+        }
+        return 1;
+    }
+
+    private void watch(WatchService watcher) throws IOException, TaskCommandException, InterruptedException {
+        refresh();
+        while(!m_out.checkError()){
+            if(!readEvents(watcher.take())){
+                continue;
+            }
+            long start = System.nanoTime();
+            WatchKey key;
+            while(System.nanoTime() - start < MAX_DELAY_MILLIS * 1_000_000
+                    && (key = watcher.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null){
+                readEvents(key);
+            }
+            refresh();
+        }
+    }
+
+    /**
+     @return true if any event is about tasks.* files
+     @throws IOException if directory can't be watched anymore
+     */
+    private static boolean readEvents(WatchKey key) throws IOException {
+        boolean relevant = false;
+        for(WatchEvent<?> event: key.pollEvents()){
+            // lost events are reported as overflow without file name
+            relevant |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || event.context() instanceof Path path && path.toString().startsWith("tasks.");
+        }
+        if(!key.reset()){
+            throw new IOException("Directory " + DIRECTORY.toAbsolutePath().normalize() + " can't be watched anymore");
+        }
+        return relevant;
+    }
+
+    /**
+     Loads storage under shared lock if its fingerprint changed and prints the difference,
+     the first refresh prints the whole list
+     */
+    private void refresh() throws IOException, TaskCommandException {
+        m_lock.lockShared();
+        try{
+            long[] fingerprint = fingerprint();
+            if(Arrays.equals(fingerprint, m_fingerprint)){
+                return;
+            }
+            List<JSONObject> JSONObjects = TaskTracker.loadFromStore(m_store);
+            if(JSONObjects == null){
+                // half-written file edited by hand, next event tries again
+                m_fingerprint = null;
+                return;
+            }
+            m_fingerprint = fingerprint;
+            JSONObjects = withArchived(JSONObjects);
+            TaskIndexes indexes = new TaskIndexes();
+            if(JSONObjects instanceof MappedTaskList){
+                indexes.setTable(TaskTable.build(JSONObjects));
+            }
+
+            int[] selected = m_query.select(JSONObjects, indexes);
+            int[] ids = new int[selected.length];
+            long[] updated = new long[selected.length];
+            for(int i = 0; i < selected.length; i++){
+                ids[i] = TaskTracker.idAt(JSONObjects, selected[i]);
+                updated[i] = updatedAt(JSONObjects, selected[i]);
+            }
+            if(m_ids == null){
+                m_query.run(JSONObjects, indexes, m_printer);
+            } else {
+                printChanges(JSONObjects, selected, ids, updated);
+            }
+            m_printer.finish();
+            m_ids = ids;
+            m_updated = updated;
+        } finally {
+            m_lock.release();
+        }
+    }
+
+    /**
+     Merges id and updatedAt columns of the last refresh with the new ones
+     */
+    private void printChanges(List<JSONObject> JSONObjects, int[] selected, int[] ids, long[] updated) throws IOException {
+        List<Integer> added = new ArrayList<Integer>();
+        List<Integer> changed = new ArrayList<Integer>();
+        List<Integer> removed = new ArrayList<Integer>();
+        int oldPosition = 0;
+        int position = 0;
+        while(oldPosition < m_ids.length || position < ids.length){
+            if(position == ids.length || oldPosition < m_ids.length && m_ids[oldPosition] < ids[position]){
+                removed.add(m_ids[oldPosition++]);
+            } else if(oldPosition == m_ids.length || ids[position] < m_ids[oldPosition]){
+                added.add(selected[position++]);
+            } else {
+                if(updated[position] != m_updated[oldPosition]){
+                    changed.add(selected[position]);
+                }
+                oldPosition++;
+                position++;
+            }
+        }
+        if(added.isEmpty() && changed.isEmpty() && removed.isEmpty()){
+            return;
+        }
+        m_printer.printNote(String.format("--- %s: %d added, %d changed, %d removed",
+                LocalTime.now().truncatedTo(ChronoUnit.SECONDS), added.size(), changed.size(), removed.size()));
+        if(!added.isEmpty()){
+            m_printer.printNote("Added:");
+        }
+        for(int index: added){
+            m_printer.print(TaskTracker.readAt(JSONObjects, index));
+        }
+        if(!changed.isEmpty()){
+            m_printer.printNote("Changed:");
+        }
+        for(int index: changed){
+            m_printer.print(TaskTracker.readAt(JSONObjects, index));
+        }
+        for(int id: removed){
+            m_printer.printRemoved(id);
+        }
+    }
+
+    /**
+     @return hot tasks merged with archived ones the query can match, archive is read again only when its index changed
+     */
+    private List<JSONObject> withArchived(List<JSONObject> JSONObjects) throws TaskCommandException {
+        long[] archiveFingerprint = new long[2];
+        try{
+            stat(ARCHIVE_INDEX, archiveFingerprint, 0);
+            if(!Arrays.equals(archiveFingerprint, m_archiveFingerprint)){
+                TaskArchive archive = TaskArchive.open(TaskArchive.PATH);
+                m_archived = archive.isEmpty() ? List.of() : archive.load(m_query);
+                m_archiveFingerprint = archiveFingerprint;
+            }
+        } catch (IOException e){
+            throw new TaskCommandException("Uh-oh IOException: couldn't read " + TaskArchive.PATH + ": " + e.getMessage());
+        } catch (JSONParseException e){
+            throw new TaskCommandException("Archive is malformed: " + e.getMessage());
+        }
+        return m_archived.isEmpty() ? JSONObjects : TaskArchive.merge(JSONObjects, m_archived);
+    }
+
+    private static long updatedAt(List<JSONObject> JSONObjects, int index){
+        if(JSONObjects instanceof MappedTaskList mappedTasks){
+            return mappedTasks.updatedAtMilli(index);
+        }
+        return MappedTaskList.toEpochMilli(JSONObjects.get(index).getUpdatedAt());
+    }
+
+    /**
+     @return version of tasks.lock, size and modification time of every storage file (-1 for missing ones)
+     */
+    private long[] fingerprint() throws IOException {
+        long[] fingerprint = new long[1 + 2 * STORAGE_FILES.length];
+        fingerprint[0] = m_lock.readVersion();
+        for(int i = 0; i < STORAGE_FILES.length; i++){
+            stat(STORAGE_FILES[i], fingerprint, 1 + 2 * i);
+        }
+        return fingerprint;
+    }
+
+    private static void stat(Path path, long[] fingerprint, int position) throws IOException {
+        try{
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            fingerprint[position] = attributes.size();
+            fingerprint[position + 1] = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        } catch (NoSuchFileException e){
+            fingerprint[position] = -1;
+            fingerprint[position + 1] = -1;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ Reading tasks.json written by the first releases and by JSONWriter.
+ legacy-tasks.json was written by the baseline writer, which put descriptions into the file without escaping
+ */
+public class JSONParserTest {
+    private static final List<String> LEGACY_DESCRIPTIONS = List.of(
+            "C:\\Users\\x", "a\\tb", "say hi loud", "end\\", "say \"hi\", ok");
+
+    @Test
+    public void readsDescriptionsOfLegacyFileAsTheyWereWritten() throws Exception {
+        List<JSONObject> JSONObjects = new JSONParser(legacyFile()).parse();
+
+        assertEquals(LEGACY_DESCRIPTIONS, JSONObjects.stream().map(JSONObject::getDescription).toList());
+        assertEquals(List.of(0, 1, 2, 3, 4), JSONObjects.stream().map(JSONObject::getId).toList());
+        assertEquals(TaskStatus.done, JSONObjects.get(1).getStatus());
+    }
+
+    @Test
+    public void legacyTasksKeepDescriptionsAfterRewrite() throws Exception {
+        List<JSONObject> JSONObjects = new JSONParser(legacyFile()).parse();
+
+        List<JSONObject> rewritten = new JSONParser(write(JSONObjects)).parse();
+
+        assertEquals(LEGACY_DESCRIPTIONS, rewritten.stream().map(JSONObject::getDescription).toList());
+    }
+
+    @Test
+    public void readsFileMixingRewrittenAndLegacyTasks() throws Exception {
+        String legacy = legacyFile();
+        List<JSONObject> JSONObjects = new JSONParser(legacy).parse();
+        // in-place patch replaces one legacy task object with the one JSONWriter writes
+        StringWriter task = new StringWriter();
+        new JSONWriter(task).writeTask(JSONObjects.getFirst());
+        int start = legacy.indexOf("\t\t{");
+        String mixed = legacy.substring(0, start) + task + legacy.substring(legacy.indexOf("\t\t}", start) + 3);
+
+        List<JSONObject> parsed = new JSONParser(mixed).parse();
+
+        assertEquals(LEGACY_DESCRIPTIONS, parsed.stream().map(JSONObject::getDescription).toList());
+    }
+
+    @Test
+    public void decodesEscapesOfTasksWithNumericIds() throws Exception {
+        JSONObject task = new JSONParser("{\"id\":7,\"description\":\"a\\tb \\\"c\\\" \\\\d\",\"status\":0,"
+                + "\"createdAt\":\"2024-01-01T10:00:00\",\"updatedAt\":\"2024-01-01T10:00:00\"}").parseSingleTask();
+
+        assertEquals("a\tb \"c\" \\d", task.getDescription());
+    }
+
+    @Test
+    public void rejectsUnknownEscapeOfTasksWithNumericIds() {
+        JSONParser parser = new JSONParser("{\"id\":7,\"description\":\"C:\\Users\",\"status\":0,"
+                + "\"createdAt\":\"2024-01-01T10:00:00\",\"updatedAt\":\"2024-01-01T10:00:00\"}");
+
+        assertThrows(JSONParseException.class, parser::parseSingleTask);
+    }
+
+    private static String write(List<JSONObject> JSONObjects) throws IOException {
+        StringWriter out = new StringWriter();
+        new JSONWriter(out).writeJSON(JSONObjects);
+        return out.toString();
+    }
+
+    private static String legacyFile() throws IOException {
+        try(InputStream in = JSONParserTest.class.getResourceAsStream("/legacy-tasks.json")){
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ Telling --stats option from description that reads the same
+ */
+public class TaskStatsTest {
+    @Test
+    public void removesOptionAfterArgumentsOfCommand() {
+        String[] args = {"add", "write report", "--stats=stats.ndjson"};
+
+        assertEquals("stats.ndjson", TaskStats.target(args));
+        assertArrayEquals(new String[]{"add", "write report"}, TaskStats.withoutArgument(args));
+    }
+
+    @Test
+    public void keepsDescriptionOfAdd() {
+        String[] args = {"add", "--stats"};
+
+        assertArrayEquals(args, TaskStats.withoutArgument(args));
+    }
+
+    @Test
+    public void keepsDescriptionOfUpdateAndRemovesOption() {
+        String[] args = {"update", "3", "--stats=file", "--stats"};
+
+        assertEquals("stderr", TaskStats.target(args));
+        assertArrayEquals(new String[]{"update", "3", "--stats=file"}, TaskStats.withoutArgument(args));
+    }
+}